@@ -0,0 +1,180 @@
+package likelion.springbootsunny.domain;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+* LoadHarness는 WorkloadGenerator가 만든 작업을 목표 처리율(opsPerSecond)에 맞춰 Handler에 보내고,
+* 작업 종류별 지연 시간 히스토그램과 초 단위 처리량을 기록하는 부하 테스트 실행기입니다.
+* 작업은 정해진 간격의 예정 시각마다 제출하고(open loop), 지연 시간은 실제 시작 시각이 아니라 예정 시각부터 잽니다.
+* 그래서 처리가 밀려 대기열이 길어진 시간도 지연 시간에 포함됩니다.
+* 한 회원의 작업(주문 생성, 그 주문의 취소와 배송 완료, 주소 변경)은 memberIndex로 정한 같은 작업 스레드(lane)에서 생성 순서대로 실행되므로,
+* 취소가 아직 끝나지 않은 생성보다 먼저 실행되는 일이 없습니다. 서로 다른 회원의 작업은 lane 수만큼 동시에 실행됩니다.
+* 생성이 실패한 주문의 취소, 배송 완료는 실행하지 않고 건너뛴 작업으로 따로 셉니다.
+* 저장소 연동은 Handler 구현이 맡으므로 임베디드 DB, 실제 DB, 메모리 구현 어느 쪽에도 같은 흐름을 재현할 수 있습니다.
+* WorkloadGenerator와 함께 운영 코드에는 들어가지 않도록 JMH 벤치마크와 같은 benchmark 소스 경로에 둡니다.
+* */
+public class LoadHarness implements AutoCloseable {
+
+    /*
+    * 작업 하나를 처리합니다. 예외가 발생하면 실패로 세고 다음 작업을 계속합니다.
+    * */
+    public interface Handler {
+        void handle(WorkloadGenerator.Operation operation) throws Exception;
+    }
+
+    private final WorkloadGenerator generator;
+    private final Handler handler;
+    private final int opsPerSecond;
+    private final ExecutorService[] lanes;
+
+    private final Map<WorkloadGenerator.OperationType, DomainMetrics.Histogram> latencyNanos =
+            new EnumMap<>(WorkloadGenerator.OperationType.class);
+    private final Map<WorkloadGenerator.OperationType, LongAdder> failures =
+            new EnumMap<>(WorkloadGenerator.OperationType.class);
+    private final Map<WorkloadGenerator.OperationType, LongAdder> skipped =
+            new EnumMap<>(WorkloadGenerator.OperationType.class);
+    private AtomicLongArray completedPerSecond = new AtomicLongArray(0);
+
+    /*
+    * 생성이 실패한 주문의 순번입니다. 같은 회원의 작업은 같은 lane에서 차례로 실행되므로, 취소, 배송 완료를 실행할 때는 생성 결과가 이미 여기에 반영되어 있습니다.
+    * */
+    private final Set<Long> failedOrders = ConcurrentHashMap.newKeySet();
+
+    public LoadHarness(WorkloadGenerator generator, Handler handler, int opsPerSecond, int concurrency) {
+        this.generator = generator;
+        this.handler = handler;
+        this.opsPerSecond = opsPerSecond;
+        this.lanes = new ExecutorService[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            lanes[i] = Executors.newSingleThreadExecutor();
+        }
+        for (WorkloadGenerator.OperationType type : WorkloadGenerator.OperationType.values()) {
+            latencyNanos.put(type, new DomainMetrics.Histogram());
+            failures.put(type, new LongAdder());
+            skipped.put(type, new LongAdder());
+        }
+    }
+
+    /*
+    * operations개의 작업을 목표 처리율로 실행하고, 모든 작업이 끝날 때까지 기다립니다.
+    * 끝나면 작업 스레드를 종료하므로 LoadHarness 하나로 한 번만 실행할 수 있습니다.
+    * */
+    public void run(long operations) throws InterruptedException {
+        long intervalNanos = 1_000_000_000L / opsPerSecond;
+        int seconds = (int) (operations / opsPerSecond) + 1;
+        completedPerSecond = new AtomicLongArray(seconds * 2 + 60);
+        AtomicLongArray perSecond = completedPerSecond;
+
+        long start = System.nanoTime();
+        for (long i = 0; i < operations; i++) {
+            long scheduled = start + i * intervalNanos;
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            WorkloadGenerator.Operation operation = generator.next();
+            lanes[Math.floorMod(operation.getMemberIndex(), lanes.length)]
+                    .execute(() -> execute(operation, scheduled, start, perSecond));
+        }
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        for (ExecutorService lane : lanes) {
+            lane.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void execute(WorkloadGenerator.Operation operation, long scheduled, long start, AtomicLongArray perSecond) {
+        WorkloadGenerator.OperationType type = operation.getType();
+        if ((type == WorkloadGenerator.OperationType.CANCEL || type == WorkloadGenerator.OperationType.DELIVER)
+                && failedOrders.contains(operation.getOrderSeq())) {
+            skipped.get(type).increment();
+            return;
+        }
+        try {
+            handler.handle(operation);
+        } catch (Exception e) {
+            failures.get(type).increment();
+            if (type == WorkloadGenerator.OperationType.CREATE) {
+                failedOrders.add(operation.getOrderSeq());
+            }
+            return;
+        }
+        long now = System.nanoTime();
+        latencyNanos.get(operation.getType()).record(now - scheduled);
+        int second = (int) Math.min((now - start) / 1_000_000_000L, perSecond.length() - 1);
+        perSecond.incrementAndGet(second);
+    }
+
+    public DomainMetrics.Histogram getLatencyNanos(WorkloadGenerator.OperationType type) {
+        return latencyNanos.get(type);
+    }
+
+    public long getFailureCount(WorkloadGenerator.OperationType type) {
+        return failures.get(type).sum();
+    }
+
+    /*
+    * 대상 주문의 생성이 실패하여 실행하지 않은 작업 수입니다.
+    * */
+    public long getSkippedCount(WorkloadGenerator.OperationType type) {
+        return skipped.get(type).sum();
+    }
+
+    /*
+    * 결과를 DomainMetrics.writeTo와 같은 "이름 값" 형식의 텍스트 파일로 내보냅니다.
+    * 작업 종류별 처리 수, p50, p99, p999 지연 시간(나노초), 실패 수, 건너뛴 수와 초마다 완료된 작업 수를 기록합니다.
+    * */
+    public void writeReport(Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writeLine(writer, "target.opsPerSecond", opsPerSecond);
+            for (Map.Entry<WorkloadGenerator.OperationType, DomainMetrics.Histogram> entry : latencyNanos.entrySet()) {
+                String name = "latency." + entry.getKey().name().toLowerCase();
+                DomainMetrics.Histogram histogram = entry.getValue();
+                writeLine(writer, name + ".count", histogram.getCount());
+                writeLine(writer, name + ".p50", histogram.percentile(0.50));
+                writeLine(writer, name + ".p99", histogram.percentile(0.99));
+                writeLine(writer, name + ".p999", histogram.percentile(0.999));
+            }
+            for (WorkloadGenerator.OperationType type : WorkloadGenerator.OperationType.values()) {
+                String name = type.name().toLowerCase();
+                writeLine(writer, "failures." + name, failures.get(type).sum());
+                writeLine(writer, "skipped." + name, skipped.get(type).sum());
+            }
+            int last = completedPerSecond.length() - 1;
+            while (last >= 0 && completedPerSecond.get(last) == 0) {
+                last--;
+            }
+            for (int second = 0; second <= last; second++) {
+                writeLine(writer, "throughput.second." + second, completedPerSecond.get(second));
+            }
+        }
+    }
+
+    private void writeLine(BufferedWriter writer, String name, long value) throws IOException {
+        writer.write(name);
+        writer.write(' ');
+        writer.write(Long.toString(value));
+        writer.newLine();
+    }
+
+    @Override
+    public void close() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package likelion.springbootsunny.domain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+* OrderBenchmark는 주문 도메인의 핫 패스(OrderItem.createOrderItem, Order.createOrder, Order.cancel, Order.getTotalPrice)를
+* 주문당 상품 수(itemsPerOrder) 1, 10, 100, 1000개에서 DB 없이 메모리 안에서만 측정하는 JMH 벤치마크입니다.
+* 처리량(ops/ms)을 재고, 주문 하나를 만들 때의 할당량은 gc 프로파일러로 함께 봅니다. (예: java -jar benchmarks.jar OrderBenchmark -prof gc)
+* Order.cancel은 취소할 주문이 매번 필요하므로 createAndCancel에서 createOrder를 뺀 값으로 읽습니다.
+* Item.removeStock과 여러 스레드가 같은 상품을 두고 경쟁하는 경우는 StockLedgerBenchmark, DB를 거치는 경우는 OrderJpaBenchmark가 측정합니다.
+* */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class OrderBenchmark {
+
+    /*
+    * 반복(iteration)마다 채우는 재고입니다. 한 반복 동안 주문을 계속 만들어도 재고가 떨어지지 않을 만큼 크게 잡습니다.
+    * */
+    private static final int STOCK = Integer.MAX_VALUE / 2;
+
+    @Param({"1", "10", "100", "1000"})
+    private int itemsPerOrder;
+
+    private Member member;
+    private Item[] items;
+    private Order placedOrder;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        member = Member.createMember("bench", AddressRecord.create(1L, new Address("Seoul", "Gangnam", "Teheran-ro", "06236")));
+        items = new Item[itemsPerOrder];
+        for (int i = 0; i < itemsPerOrder; i++) {
+            Item item = new Item();
+            item.setId(i + 1L);
+            item.setBrand("brand-" + i % 10);
+            item.setName("item-" + i);
+            item.setPrice(Money.won(1_000 + i));
+            item.setStock(STOCK);
+            items[i] = item;
+        }
+        placedOrder = createOrder();
+    }
+
+    @Benchmark
+    public void createOrderItems(Blackhole blackhole) {
+        for (Item item : items) {
+            blackhole.consume(OrderItem.createOrderItem(item, item.getPrice(), 1));
+        }
+    }
+
+    @Benchmark
+    public Order createOrder() {
+        OrderItem[] orderItems = new OrderItem[items.length];
+        for (int i = 0; i < items.length; i++) {
+            orderItems[i] = OrderItem.createOrderItem(items[i], items[i].getPrice(), 1);
+        }
+        return Order.createOrder(member, orderItems);
+    }
+
+    @Benchmark
+    public Order createAndCancel() {
+        Order order = createOrder();
+        order.cancel();
+        return order;
+    }
+
+    @Benchmark
+    public long getTotalPrice() {
+        return placedOrder.getTotalPrice();
+    }
+}
@@ -0,0 +1,132 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/*
+* OrderJpaBenchmark는 주문 생성과 취소를 내장 H2 DB에 실제로 저장하면서 측정하는 JMH 벤치마크입니다.
+* OrderBenchmark의 메모리 안 비용에 flush(JDBC 배치 insert, 재고 update)와 트랜잭션 비용이 더해진 값을 주문당 상품 수별로 봅니다.
+* 샤딩은 켜지 않으므로 @ShardedId는 엔티티별 pooled 시퀀스로 id를 만듭니다.
+* 한 스레드에서만 실행하며, 같은 상품 행을 두고 경쟁하는 비용은 StockLedgerBenchmark가 측정합니다.
+* */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderJpaBenchmark {
+
+    private static final int STOCK = Integer.MAX_VALUE / 2;
+
+    @Param({"1", "10", "100", "1000"})
+    private int itemsPerOrder;
+
+    private EntityManagerFactory emf;
+    private Long memberId;
+    private Long[] itemIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        emf = new Configuration()
+                .addAnnotatedClass(AddressRecord.class)
+                .addAnnotatedClass(Member.class)
+                .addAnnotatedClass(Item.class)
+                .addAnnotatedClass(Order.class)
+                .addAnnotatedClass(OrderItem.class)
+                .addAnnotatedClass(Delivery.class)
+                .addAnnotatedClass(OrderSummary.class)
+                .addAnnotatedClass(OrderEvent.class)
+                .addAnnotatedClass(MoneyConverter.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:orders-" + itemsPerOrder + ";DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .setProperty("hibernate.jdbc.batch_size", "100")
+                .setProperty("hibernate.order_inserts", "true")
+                .setProperty("hibernate.order_updates", "true")
+                .buildSessionFactory();
+        itemIds = new Long[itemsPerOrder];
+        memberId = inTransaction(em -> {
+            AddressRecord addressRecord = new AddressBook(em).resolve(new Address("Seoul", "Gangnam", "Teheran-ro", "06236"));
+            Member member = Member.createMember("bench", addressRecord);
+            em.persist(member);
+            for (int i = 0; i < itemsPerOrder; i++) {
+                Item item = new Item();
+                item.setBrand("brand-" + i % 10);
+                item.setName("item-" + i);
+                item.setPrice(Money.won(1_000 + i));
+                item.setStock(STOCK);
+                em.persist(item);
+                itemIds[i] = item.getId();
+            }
+            return member.getId();
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        emf.close();
+    }
+
+    @Benchmark
+    public Long placeOrder() {
+        return inTransaction(this::place);
+    }
+
+    @Benchmark
+    public Long placeAndCancel() {
+        Long orderId = inTransaction(this::place);
+        return inTransaction(em -> {
+            em.find(Order.class, orderId).cancel();
+            return orderId;
+        });
+    }
+
+    private Long place(EntityManager em) {
+        Member member = em.find(Member.class, memberId);
+        OrderItem[] orderItems = new OrderItem[itemIds.length];
+        for (int i = 0; i < itemIds.length; i++) {
+            Item item = em.find(Item.class, itemIds[i]);
+            orderItems[i] = OrderItem.createOrderItem(item, item.getPrice(), 1);
+        }
+        Order order = Order.createOrder(member, orderItems);
+        em.persist(order);
+        return order.getId();
+    }
+
+    private <T> T inTransaction(Function<EntityManager, T> work) {
+        EntityManager em = emf.createEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            T result = work.apply(em);
+            tx.commit();
+            return result;
+        } catch (RuntimeException e) {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+}
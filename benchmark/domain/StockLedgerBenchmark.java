@@ -0,0 +1,127 @@
+package likelion.springbootsunny.domain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+* StockLedgerBenchmark는 여러 스레드가 같은 상품의 재고를 동시에 바꿀 때 StockLedger(CAS 슬롯)와 엔티티 경로(Item.removeStock)를 비교하는 JMH 벤치마크입니다.
+* 엔티티 경로는 DB 행 락처럼 상품마다 락을 잡고 removeStock, addStock을 하며, StockLedger 경로는 reserve, release를 합니다.
+* 두 경로 모두 한 번에 한 개를 빼고 다시 넣으므로 재고는 측정 내내 그대로입니다.
+* 스레드 수 1, 8, 64는 메서드마다 @Threads로 정하고, 경쟁 정도는 스레드들이 나누어 쓰는 상품 수(hotItems)로 바꿉니다.
+* 락 없이 한 스레드에서 Item.removeStock만 부르는 비용은 removeStockUncontended로 봅니다.
+* */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class StockLedgerBenchmark {
+
+    private static final int STOCK = Integer.MAX_VALUE / 2;
+
+    @Param({"1", "16"})
+    private int hotItems;
+
+    private Item[] items;
+    private StockLedger stockLedger;
+
+    /*
+    * 스레드마다 다음에 고를 상품의 순번입니다.
+    * */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        private int next(int bound) {
+            int index = next;
+            next = index + 1 == bound ? 0 : index + 1;
+            return index;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        items = new Item[hotItems];
+        stockLedger = new StockLedger();
+        for (int i = 0; i < hotItems; i++) {
+            Item item = new Item();
+            item.setId(i + 1L);
+            item.setPrice(Money.won(1_000));
+            item.setStock(STOCK);
+            items[i] = item;
+            stockLedger.register(item);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void ledger1(Cursor cursor) {
+        ledger(cursor);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void ledger8(Cursor cursor) {
+        ledger(cursor);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void ledger64(Cursor cursor) {
+        ledger(cursor);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void entity1(Cursor cursor) {
+        entity(cursor);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void entity8(Cursor cursor) {
+        entity(cursor);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void entity64(Cursor cursor) {
+        entity(cursor);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int removeStockUncontended(Cursor cursor) {
+        Item item = items[cursor.next(hotItems)];
+        item.removeStock(1);
+        return item.getStock();
+    }
+
+    private void ledger(Cursor cursor) {
+        Long itemId = items[cursor.next(hotItems)].getId();
+        stockLedger.reserve(itemId, 1);
+        stockLedger.release(itemId, 1);
+    }
+
+    private void entity(Cursor cursor) {
+        Item item = items[cursor.next(hotItems)];
+        synchronized (item) {
+            item.removeStock(1);
+            item.addStock(1);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package likelion.springbootsunny.domain;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/*
+* WorkloadGenerator는 운영 환경과 비슷한 모양의 주문 작업(Operation) 흐름을 만들어 내는 합성 부하 생성기입니다.
+* 상품은 Zipf 분포로 골라 소수의 인기 상품에 주문이 몰리고, 장바구니 크기는 주어진 가중치 분포를 따르며,
+* 주문 취소, 배송 완료, 회원 주소 변경이 정해진 비율로 섞여 나옵니다.
+* 난수는 seed로 초기화한 SplittableRandom 하나만 사용하므로 같은 Profile과 seed로는 언제나 같은 흐름이 나옵니다.
+* 상품과 회원은 0부터 시작하는 번호(index)로, 주문은 생성된 순번(orderSeq)으로 가리키며, 실제 엔티티와의 대응은 작업을 처리하는 쪽이 정합니다.
+* 생성기는 작업 결과를 알 수 없으므로 CREATE가 실패한 주문도 열린 주문으로 남으며, 그 주문의 CANCEL, DELIVER는 실행하는 쪽(LoadHarness)이 건너뜁니다.
+* 한 스레드에서만 사용해야 합니다.
+* */
+public class WorkloadGenerator {
+
+    public enum OperationType {
+        CREATE, CANCEL, DELIVER, CHANGE_ADDRESS
+    }
+
+    /*
+    * 부하의 모양을 정하는 설정입니다. 설정하지 않은 값은 기본값을 사용합니다.
+    * */
+    public static class Profile {
+        private int itemCount = 1_000;
+        private int memberCount = 10_000;
+        private double zipfExponent = 1.0;
+        private double[] cartSizeWeights = {40, 25, 15, 10, 5, 3, 2};
+        private double cancelRatio = 0.05;
+        private double deliverRatio = 0.20;
+        private double addressChangeRatio = 0.01;
+
+        public Profile items(int itemCount, double zipfExponent) {
+            this.itemCount = itemCount;
+            this.zipfExponent = zipfExponent;
+            return this;
+        }
+
+        public Profile members(int memberCount) {
+            this.memberCount = memberCount;
+            return this;
+        }
+
+        /*
+        * cartSizeWeights[i]는 장바구니에 서로 다른 상품이 i + 1개 담길 상대 가중치입니다.
+        * */
+        public Profile cartSizes(double... cartSizeWeights) {
+            this.cartSizeWeights = cartSizeWeights.clone();
+            return this;
+        }
+
+        public Profile ratios(double cancelRatio, double deliverRatio, double addressChangeRatio) {
+            if (cancelRatio + deliverRatio + addressChangeRatio >= 1.0) {
+                throw new IllegalArgumentException("ratios must leave room for CREATE");
+            }
+            this.cancelRatio = cancelRatio;
+            this.deliverRatio = deliverRatio;
+            this.addressChangeRatio = addressChangeRatio;
+            return this;
+        }
+    }
+
+    /*
+    * 작업 하나입니다. 종류에 따라 쓰이는 필드가 다릅니다.
+    * CREATE: memberIndex, itemIndexes, counts, orderSeq(새로 부여된 순번)
+    * CANCEL, DELIVER: orderSeq(대상 주문의 순번), memberIndex(그 주문을 만든 회원)
+    * CHANGE_ADDRESS: memberIndex, address
+    * */
+    public static final class Operation {
+        private final OperationType type;
+        private final long orderSeq;
+        private final int memberIndex;
+        private final int[] itemIndexes;
+        private final int[] counts;
+        private final Address address;
+
+        private Operation(OperationType type, long orderSeq, int memberIndex, int[] itemIndexes, int[] counts,
+                          Address address) {
+            this.type = type;
+            this.orderSeq = orderSeq;
+            this.memberIndex = memberIndex;
+            this.itemIndexes = itemIndexes;
+            this.counts = counts;
+            this.address = address;
+        }
+
+        public OperationType getType() {
+            return type;
+        }
+
+        public long getOrderSeq() {
+            return orderSeq;
+        }
+
+        public int getMemberIndex() {
+            return memberIndex;
+        }
+
+        public int[] getItemIndexes() {
+            return itemIndexes;
+        }
+
+        public int[] getCounts() {
+            return counts;
+        }
+
+        public Address getAddress() {
+            return address;
+        }
+    }
+
+    /*
+    * 가중치로 누적 분포(CDF) 배열을 만들어 두고, 0~1 사이 난수를 이진 탐색하여 번호를 고르는 표본 추출기입니다.
+    * 만들 때 O(n), 뽑을 때 O(log n)이며 뽑을 때 객체를 만들지 않습니다.
+    * */
+    static final class CdfSampler {
+        private final double[] cdf;
+
+        CdfSampler(double[] weights) {
+            cdf = new double[weights.length];
+            double total = 0;
+            for (int i = 0; i < weights.length; i++) {
+                total += weights[i];
+                cdf[i] = total;
+            }
+            for (int i = 0; i < cdf.length; i++) {
+                cdf[i] /= total;
+            }
+        }
+
+        static CdfSampler zipf(int n, double exponent) {
+            double[] weights = new double[n];
+            for (int k = 0; k < n; k++) {
+                weights[k] = 1.0 / Math.pow(k + 1, exponent);
+            }
+            return new CdfSampler(weights);
+        }
+
+        int sample(SplittableRandom random) {
+            int i = Arrays.binarySearch(cdf, random.nextDouble());
+            return Math.min(i >= 0 ? i : -i - 1, cdf.length - 1);
+        }
+    }
+
+    private static final String[] CITIES = {"서울", "부산", "인천", "대구", "대전", "광주", "수원", "울산"};
+
+    private final Profile profile;
+    private final SplittableRandom random;
+    private final CdfSampler itemSampler;
+    private final CdfSampler cartSizeSampler;
+
+    /*
+    * 아직 취소되거나 배송 완료되지 않은 주문의 순번과 주문한 회원입니다. 취소, 배송 완료 대상은 여기서 고르고 뺍니다.
+    * 가운데 원소는 마지막 원소와 자리를 바꿔 O(1)로 뺍니다.
+    * */
+    private long[] openOrders = new long[1024];
+    private int[] openMembers = new int[1024];
+    private int openCount;
+    private long nextOrderSeq;
+
+    public WorkloadGenerator(Profile profile, long seed) {
+        this.profile = profile;
+        this.random = new SplittableRandom(seed);
+        this.itemSampler = CdfSampler.zipf(profile.itemCount, profile.zipfExponent);
+        this.cartSizeSampler = new CdfSampler(profile.cartSizeWeights);
+    }
+
+    /*
+    * 다음 작업을 만듭니다. 열린 주문이 없으면 취소, 배송 완료 대신 주문을 생성합니다.
+    * */
+    public Operation next() {
+        double r = random.nextDouble();
+        if (openCount > 0 && r < profile.cancelRatio) {
+            return takeOpenOrder(OperationType.CANCEL);
+        }
+        r -= profile.cancelRatio;
+        if (openCount > 0 && r >= 0 && r < profile.deliverRatio) {
+            return takeOpenOrder(OperationType.DELIVER);
+        }
+        r -= profile.deliverRatio;
+        if (r >= 0 && r < profile.addressChangeRatio) {
+            return new Operation(OperationType.CHANGE_ADDRESS, -1, random.nextInt(profile.memberCount),
+                    null, null, randomAddress());
+        }
+        return create();
+    }
+
+    private Operation create() {
+        int size = Math.min(cartSizeSampler.sample(random) + 1, profile.itemCount);
+        int[] itemIndexes = new int[size];
+        int[] counts = new int[size];
+        int n = 0;
+        while (n < size) {
+            int itemIndex = itemSampler.sample(random);
+            if (!contains(itemIndexes, n, itemIndex)) {
+                itemIndexes[n] = itemIndex;
+                counts[n] = 1 + random.nextInt(3);
+                n++;
+            }
+        }
+        long orderSeq = nextOrderSeq++;
+        int memberIndex = random.nextInt(profile.memberCount);
+        if (openCount == openOrders.length) {
+            openOrders = Arrays.copyOf(openOrders, openCount * 2);
+            openMembers = Arrays.copyOf(openMembers, openCount * 2);
+        }
+        openOrders[openCount] = orderSeq;
+        openMembers[openCount] = memberIndex;
+        openCount++;
+        return new Operation(OperationType.CREATE, orderSeq, memberIndex, itemIndexes, counts, null);
+    }
+
+    private Operation takeOpenOrder(OperationType type) {
+        int i = random.nextInt(openCount);
+        long orderSeq = openOrders[i];
+        int memberIndex = openMembers[i];
+        openCount--;
+        openOrders[i] = openOrders[openCount];
+        openMembers[i] = openMembers[openCount];
+        return new Operation(type, orderSeq, memberIndex, null, null, null);
+    }
+
+    private static boolean contains(int[] values, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Address randomAddress() {
+        String city = CITIES[random.nextInt(CITIES.length)];
+        return new Address(city, city, "street-" + random.nextInt(10_000),
+                String.format("%05d", random.nextInt(100_000)));
+    }
+}
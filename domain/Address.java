@@ -14,15 +14,17 @@ import jakarta.persistence.Embeddable;
 **/
 import lombok.AllArgsConstructor;
 /*
-*lombok.Data는 Lombok 라이브러리에서 제공하는 주석입니다.
-*이 주석을 사용하면 클래스의 기본적인 메서드들을 자동으로 생성할 수 있습니다.
-*@Data 주석을 사용하면 Lombok은 다음과 같은 메서드를 자동으로 생성합니다:
-*Getter: 클래스의 모든 필드에 대한 Getter 메서드를 생성합니다.
-*Setter: 클래스의 모든 필드에 대한 Setter 메서드를 생성합니다.
-*equals, hashCode: 객체의 동등성 비교를 위한 equals()와 해시 코드 생성을 위한 hashCode() 메서드를 생성합니다.
-*toString: 객체의 문자열 표현을 생성하는 toString() 메서드를 생성합니다.
+*lombok.EqualsAndHashCode는 Lombok 라이브러리에서 제공하는 주석입니다.
+*이 주석을 사용하면 모든 필드 값을 비교하는 equals()와 hashCode() 메서드를 자동으로 생성할 수 있습니다.
+*AddressInterner가 같은 내용의 주소를 하나의 인스턴스로 합칠 때 이 두 메서드를 사용합니다.
 **/
-import lombok.Data;
+import lombok.EqualsAndHashCode;
+/*
+*lombok.Getter는 Lombok 라이브러리에서 제공하는 주석입니다.
+*이 주석을 사용하면 모든 필드에 대한 Getter 메서드를 자동으로 생성할 수 있습니다.
+*Setter는 만들지 않으므로 생성된 주소는 바꿀 수 없는(immutable) 값 객체가 됩니다.
+**/
+import lombok.Getter;
 /*
 *lombok.NoArgsConstructor는 Lombok 라이브러리에서 제공하는 주석입니다.
 *이 주석을 사용하면 파라미터가 없는 기본 생성자를 자동으로 생성할 수 있습니다.
@@ -30,16 +32,26 @@ import lombok.Data;
 *이 생성자는 인스턴스를 만들 때 아무런 인자를 전달하지 않고도 객체를 초기화할 수 있도록 합니다.
 **/
 import lombok.NoArgsConstructor;
+/*
+*lombok.ToString은 Lombok 라이브러리에서 제공하는 주석입니다.
+*이 주석을 사용하면 모든 필드 값을 포함하는 toString() 메서드를 자동으로 생성할 수 있습니다.
+**/
+import lombok.ToString;
+
+import static lombok.AccessLevel.PROTECTED;
 
 @Embeddable
-@Data
+@Getter
+@EqualsAndHashCode
+@ToString
 @AllArgsConstructor
-@NoArgsConstructor
+@NoArgsConstructor(access = PROTECTED)
 
 /*
 * Address라는 클래스를 정의하는 예시입니다.
 *이 클래스는 주소를 나타내는 데이터를 저장하기 위해 사용됩니다.
 * 각 필드는 주소의 도시, 주(혹은 시/도), 거리, 우편번호를 나타냅니다.
+* 한 번 만들어진 주소는 바뀌지 않으므로 Member와 여러 Delivery가 같은 인스턴스를 공유할 수 있습니다. (AddressInterner)
 * */
 public class Address {
     private String city;
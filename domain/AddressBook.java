@@ -0,0 +1,104 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.EntityManager;
+
+/*
+* AddressBook은 Address 값을 AddressRecord 행으로 바꾸어 주는 조회기입니다. 없는 주소는 새 행으로 저장합니다.
+* 호출하는 쪽의 트랜잭션 안에서 사용해야 합니다.
+* 서로 다른 트랜잭션이 같은 새 주소를 동시에 저장하면 한쪽이 기본 키 중복으로 실패하며, 명령을 다시 실행하면 이미 저장된 행을 찾습니다.
+* */
+public class AddressBook {
+
+    /*
+    * 주소를 행 사전으로 옮겨서 줄어드는 저장 공간의 추정치입니다. 문자열은 글자 수, id와 외래 키는 8바이트로 계산하며
+    * 행 헤더와 인덱스 크기는 포함하지 않습니다.
+    * inlineBytes: 회원과 배송 행마다 주소를 직접 저장할 때의 주소 컬럼 크기 합
+    * normalizedBytes: 주소 사전 행의 크기와 회원, 배송 행의 외래 키 크기 합
+    * */
+    public static final class StorageEstimate {
+        private final long references;
+        private final long records;
+        private final long inlineBytes;
+        private final long normalizedBytes;
+
+        private StorageEstimate(long references, long records, long inlineBytes, long normalizedBytes) {
+            this.references = references;
+            this.records = records;
+            this.inlineBytes = inlineBytes;
+            this.normalizedBytes = normalizedBytes;
+        }
+
+        public long getReferences() {
+            return references;
+        }
+
+        public long getRecords() {
+            return records;
+        }
+
+        public long getInlineBytes() {
+            return inlineBytes;
+        }
+
+        public long getNormalizedBytes() {
+            return normalizedBytes;
+        }
+    }
+
+    private static final String CONTENT_LENGTH = "coalesce(length(r.address.city), 0) + coalesce(length(r.address.state), 0)"
+            + " + coalesce(length(r.address.street), 0) + coalesce(length(r.address.zipcode), 0)";
+
+    private final EntityManager em;
+
+    public AddressBook(EntityManager em) {
+        this.em = em;
+    }
+
+    /*
+    * address와 내용이 같은 행을 반환합니다. 해시 id의 행이 다른 주소이면 다음 id를 차례로 확인합니다.
+    * */
+    public AddressRecord resolve(Address address) {
+        for (long id = AddressRecord.hashOf(address); ; id = (id + 1) & Long.MAX_VALUE) {
+            AddressRecord addressRecord = em.find(AddressRecord.class, id);
+            if (addressRecord == null) {
+                addressRecord = AddressRecord.create(id, address);
+                em.persist(addressRecord);
+                return addressRecord;
+            }
+            if (addressRecord.getAddress().equals(address)) {
+                return addressRecord;
+            }
+        }
+    }
+
+    /*
+    * 다른 DataSource(샤딩을 켠 경우의 참조 DataSource)에서 정한 주소 행을 같은 id로 이 EntityManager의 DataSource에도 둡니다.
+    * 이미 같은 id의 행이 있으면 그대로 사용하고, 그 행의 주소가 다르면 두 DataSource의 사전이 어긋난 것이므로 실패합니다.
+    * */
+    public AddressRecord replicate(AddressRecord source) {
+        AddressRecord addressRecord = em.find(AddressRecord.class, source.getId());
+        if (addressRecord == null) {
+            addressRecord = AddressRecord.create(source.getId(), source.getAddress());
+            em.persist(addressRecord);
+            return addressRecord;
+        }
+        if (!addressRecord.getAddress().equals(source.getAddress())) {
+            throw new IllegalStateException("address record " + source.getId() + " differs from the replicated one");
+        }
+        return addressRecord;
+    }
+
+    public StorageEstimate measureStorage() {
+        Object[] dictionary = em.createQuery("select count(r), coalesce(sum(" + CONTENT_LENGTH + "), 0)"
+                + " from AddressRecord r", Object[].class).getSingleResult();
+        Object[] members = em.createQuery("select count(m), coalesce(sum(" + CONTENT_LENGTH + "), 0)"
+                + " from Member m join m.addressRecord r", Object[].class).getSingleResult();
+        Object[] deliveries = em.createQuery("select count(d), coalesce(sum(" + CONTENT_LENGTH + "), 0)"
+                + " from Delivery d join d.addressRecord r", Object[].class).getSingleResult();
+        long records = ((Number) dictionary[0]).longValue();
+        long references = ((Number) members[0]).longValue() + ((Number) deliveries[0]).longValue();
+        long inlineBytes = ((Number) members[1]).longValue() + ((Number) deliveries[1]).longValue();
+        long normalizedBytes = ((Number) dictionary[1]).longValue() + records * Long.BYTES + references * Long.BYTES;
+        return new StorageEstimate(references, records, inlineBytes, normalizedBytes);
+    }
+}
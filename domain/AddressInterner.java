@@ -0,0 +1,68 @@
+package likelion.springbootsunny.domain;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/*
+* AddressInterner는 내용이 같은 Address를 하나의 인스턴스로 합쳐 주는 인터닝(interning) 캐시입니다.
+* AddressRecord는 영속성 컨텍스트마다 따로 읽히므로, 읽어 올 때 이 클래스를 거쳐 같은 주소가 하나의 인스턴스를 공유합니다.
+* 키와 값을 모두 약한 참조(weak reference)로 들고 있으므로 더 이상 어떤 엔티티도 쓰지 않는 주소는 GC가 정리합니다.
+* WeakHashMap은 스레드 안전하지 않으므로 주소의 hashCode로 나눈 구역(stripe)마다 따로 잠가, 서로 다른 주소의 인터닝이 한 락을 두고 다투지 않게 합니다.
+* */
+public final class AddressInterner {
+
+    private static final int STRIPES = 64;
+
+    private static final Stripe[] CANONICAL = new Stripe[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            CANONICAL[i] = new Stripe();
+        }
+    }
+
+    private static final class Stripe {
+        private final Map<Address, WeakReference<Address>> addresses = new WeakHashMap<>();
+    }
+
+    private AddressInterner() {
+    }
+
+    /*
+    * address와 내용이 같은 대표 인스턴스를 반환합니다. 처음 보는 주소면 address 자신이 대표 인스턴스가 됩니다.
+    * */
+    public static Address intern(Address address) {
+        if (address == null) {
+            return null;
+        }
+        Stripe stripe = CANONICAL[stripeOf(address)];
+        synchronized (stripe) {
+            WeakReference<Address> reference = stripe.addresses.get(address);
+            Address canonical = reference == null ? null : reference.get();
+            if (canonical != null) {
+                return canonical;
+            }
+            stripe.addresses.put(address, new WeakReference<>(address));
+            return address;
+        }
+    }
+
+    private static int stripeOf(Address address) {
+        int h = address.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /*
+    * 현재 인터닝되어 있는 서로 다른 주소의 수입니다. 중복 제거 효과를 측정할 때 사용합니다.
+    * */
+    public static int size() {
+        int size = 0;
+        for (Stripe stripe : CANONICAL) {
+            synchronized (stripe) {
+                size += stripe.addresses.size();
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,79 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Immutable;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static lombok.AccessLevel.PROTECTED;
+
+/*
+* AddressRecord는 서로 다른 주소 하나를 한 행으로 저장하는 주소 사전(dictionary) 엔티티입니다.
+* 회원과 배송은 주소 문자열 네 개를 행마다 복사하지 않고 이 행의 id(address_record_id) 하나만 참조하므로,
+* 같은 주소로 주문이 반복될수록 delivery 테이블이 작아집니다.
+* id는 주소 내용의 SHA-256 해시 앞 8바이트로 정하므로 같은 주소는 어느 프로세스에서 저장해도 같은 행이 됩니다.
+* 해시가 겹친 다른 주소는 AddressBook이 다음 id로 넘어가 저장합니다.
+* 주소는 바뀌지 않으므로 @Immutable로 변경 감지에서 제외합니다.
+* 샤딩을 켜면 주소 사전은 참조 DataSource와 모든 샤드에 같은 id로 둡니다. 바뀌지 않는 행이므로 복제해도 어긋나지 않습니다. (ShardRoutingDataSource 참고)
+* */
+@Entity
+@Immutable
+@BatchSize(size = 100)
+@Table(name = "address_record")
+@Getter
+@NoArgsConstructor(access = PROTECTED)
+public class AddressRecord {
+
+    @Id
+    private Long id;
+
+    @Embedded
+    private Address address;
+
+    static AddressRecord create(long id, Address address) {
+        AddressRecord addressRecord = new AddressRecord();
+        addressRecord.id = id;
+        addressRecord.address = AddressInterner.intern(address);
+        return addressRecord;
+    }
+
+    /*
+    * 주소 내용으로 만든 0 이상의 id 후보입니다. 필드 사이에 구분 문자를 넣어 ("ab", "c")와 ("a", "bc")가 같은 값이 되지 않게 합니다.
+    * */
+    static long hashOf(Address address) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (String field : new String[]{address.getCity(), address.getState(), address.getStreet(), address.getZipcode()}) {
+            if (field == null) {
+                digest.update((byte) 1);
+            } else {
+                digest.update((byte) 0);
+                digest.update(field.getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte) 0x1f);
+        }
+        byte[] hash = digest.digest();
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            value = (value << 8) | (hash[i] & 0xff);
+        }
+        return value & Long.MAX_VALUE;
+    }
+
+    /*
+    * @PostLoad: 읽어 온 주소를 AddressInterner의 대표 인스턴스로 바꾸어, 영속성 컨텍스트가 달라도 같은 주소는 하나의 인스턴스를 공유합니다.
+    * */
+    @PostLoad
+    private void internAddress() {
+        this.address = AddressInterner.intern(this.address);
+    }
+}
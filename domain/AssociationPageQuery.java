@@ -0,0 +1,39 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.EntityManager;
+
+import java.util.List;
+
+/*
+* AssociationPageQuery는 Item -> OrderItem, Member -> Order 역방향 연관관계를 키셋(id) 페이지 단위로 읽는 조회 클래스입니다.
+* Item.orderItem, Member.orderList 컬렉션을 없앤 대신, 필요한 화면에서만 size개씩 끊어 읽어
+* 많이 팔린 상품이나 주문이 많은 회원도 한 번에 한 페이지만 메모리에 올라옵니다.
+* 전체 개수는 Item.orderItemCount, Member.orderCount로 조회 없이 알 수 있습니다.
+* afterId에는 이전 페이지 마지막 행의 id를 넘기며, 첫 페이지는 0을 넘깁니다.
+* */
+public class AssociationPageQuery {
+
+    private final EntityManager em;
+
+    public AssociationPageQuery(EntityManager em) {
+        this.em = em;
+    }
+
+    public List<OrderItem> findOrderItems(Item item, long afterId, int size) {
+        return em.createQuery("select oi from OrderItem oi where oi.item = :item and oi.id > :afterId"
+                        + " order by oi.id", OrderItem.class)
+                .setParameter("item", item)
+                .setParameter("afterId", afterId)
+                .setMaxResults(size)
+                .getResultList();
+    }
+
+    public List<Order> findOrders(Member member, long afterId, int size) {
+        return em.createQuery("select o from Order o where o.member = :member and o.id > :afterId"
+                        + " order by o.id", Order.class)
+                .setParameter("member", member)
+                .setParameter("afterId", afterId)
+                .setMaxResults(size)
+                .getResultList();
+    }
+}
@@ -20,7 +20,9 @@ import lombok.NoArgsConstructor;
 
 
 import static jakarta.persistence.EnumType.STRING;
+import static likelion.springbootsunny.domain.Delivery.DeliveryStatus.DONE;
 import static likelion.springbootsunny.domain.Delivery.DeliveryStatus.ESTABLISHED;
+import static likelion.springbootsunny.domain.Delivery.DeliveryStatus.PROGRESS;
 import static lombok.AccessLevel.PROTECTED;
 
 /*
@@ -50,13 +52,25 @@ import static lombok.AccessLevel.PROTECTED;
 *이 클래스는 배송 정보를 나타내는 역할을 합니다.*/
 public class Delivery {
     /*
+    * 배송지 주소나 도시가 없는 배송의 도시 자리에 쓰는 값입니다.
+    * */
+    public static final String UNKNOWN_CITY = "(unknown)";
+
+    /*
    *@Id: 해당 필드를 엔티티의 기본 키(primary key)로 지정합니다.
-   *@GeneratedValue: 기본 키의 값을 자동으로 생성하기 위한 전략을 지정합니다. 전략에 따라 자동으로 값이 생성됩니다.
    *id 필드는 Delivery 엔티티의 기본 키로 사용되는 필드입니다. Long 타입으로 선언되어 있습니다.
+   *@ShardedId: 주문과 같은 샤드 번호가 들어간 id를 insert 전에 만들어, Order와 함께 배치 insert 되고 같은 샤드에 저장됩니다.
    * */
-   @Id @GeneratedValue
+   @Id
+   @ShardedId(sequenceName = "delivery_seq")
     private Long id;
 
+    /*
+    *@Version: 낙관적 락을 위한 버전 필드입니다. 배송 상태 변경과 주문 취소가 동시에 일어나면 한쪽이 충돌로 실패합니다.
+    * */
+    @Version
+    private Long version;
+
     /*
     *@OneToOne: 일대일 관계를 나타내는 애너테이션입니다. Delivery 엔티티와 Order 엔티티 사이에 일대일 관계가 설정되어 있는 것으로 보입니다.
     * mappedBy = "delivery": 양방향 관계에서 역방향 매핑을 나타냅니다.
@@ -75,44 +89,69 @@ public class Delivery {
     private DeliveryStatus deliveryStatus;
 
     /*
-    * private String city;
-    * city 필드는 도시 이름을 나타내는 문자열 필드입니다.
-    * private String state;
-    * state 필드는 주(도, 국가 등)를 나타내는 문자열 필드입니다.
-    * private String street;
-    * street 필드는 거리 또는 도로명을 나타내는 문자열 필드입니다.
-    * private String zipcode;
-    * zipcode 필드는 우편번호를 나타내는 문자열 필드입니다.
-    * 위의 코드는 city, state, street, zipcode라는 필드를 가진 클래스로, 주소 정보를 저장할 수 있습니다.
-    * 이 클래스의 인스턴스를 생성하고 필드에 값을 설정하면 해당 주소 정보를 나타낼 수 있습니다.
+    * @ManyToOne(fetch = LAZY), @JoinColumn(name = "address_record_id"): 배송지 주소를 주소 사전(AddressRecord) 행으로 참조합니다.
+    * 주문마다 주소 문자열 네 개를 복사하지 않고 id 하나만 저장합니다. 기존 배송 행은 DomainBackfill.backfillAddressRecords로 옮깁니다.
     * */
-    private String city;
-    private String state;
-    private String street;
-    private String zipcode;
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "address_record_id")
+    private AddressRecord addressRecord;
 
     /*
     * createDelivery는 Delivery 객체를 생성하고 초기화하여 반환하는 메서드입니다.
     * 이 메서드는 정적으로 선언되어 다른 클래스에서 직접 호출될 수 있습니다.
-    * Order order와 주소 관련 정보인 city, state, street, zipcode를 매개변수로 받습니다.
-    * 이 정보는 Delivery 객체를 생성하고 초기화하는 데 사용될 것입니다.
-    * Delivery delivery = new Delivery();을 통해 Delivery 객체를 생성합니다.
-    * delivery.order = order;를 통해 생성한 Delivery 객체의 order 필드에 매개변수로 받은 order를 할당합니다.
+    * Order order와 배송지 주소 사전 행 addressRecord를 매개변수로 받습니다.
     * delivery.deliveryStatus = ESTABLISHED;를 통해 생성한 Delivery 객체의 deliveryStatus 필드를 ESTABLISHED 상태로 설정합니다.
-    * ESTABLISHED는 어떤 값인지에 대한 정보가 주어지지 않았으므로, 이 부분은 DeliveryStatus 열거형 타입에 정의된 상태 값일 것으로 추측됩니다.
-    * delivery.city = city;, delivery.state = state;, delivery.street = street;, delivery.zipcode = zipcode;를 통해 생성한 Delivery 객체의 주소 관련 필드에 매개변수로 받은 주소 정보를 할당합니다.
+    * 주소는 복사하지 않고 회원과 같은 주소 사전 행을 참조합니다.
     * return delivery;를 통해 생성한 Delivery 객체를 반환합니다.
     * */
-    public static Delivery createDelivery(Order order, String city, String state, String street, String zipcode) {
+    public static Delivery createDelivery(Order order, AddressRecord addressRecord) {
         Delivery delivery = new Delivery();
         delivery.order = order;
         delivery.deliveryStatus = ESTABLISHED;
-        delivery.city = city;
-        delivery.state = state;
-        delivery.street = street;
-        delivery.zipcode = zipcode;
+        delivery.addressRecord = addressRecord;
         return delivery;
     }
+
+    /*
+    * getAddress는 배송지 주소 값을 반환합니다. 주소가 없는 배송은 null입니다.
+    * */
+    public Address getAddress() {
+        return addressRecord == null ? null : addressRecord.getAddress();
+    }
+
+    /*
+    * getCity는 배송지 도시를 반환합니다. 주소가 없거나(주소 사전으로 옮기기 전의 행 등) 도시가 비어 있으면 UNKNOWN_CITY를 반환하여,
+    * 집계와 내보내기가 주소 없는 배송 하나 때문에 실패하지 않게 합니다.
+    * */
+    public String getCity() {
+        Address address = getAddress();
+        return address == null || address.getCity() == null ? UNKNOWN_CITY : address.getCity();
+    }
+    /*
+    * startProgress는 배송을 ESTABLISHED에서 PROGRESS 상태로 옮기는 메서드입니다.
+    * 다른 상태에서 호출하면 상태가 뒤로 가거나 건너뛰지 않도록 IllegalStateException을 발생시킵니다.
+    * */
+    public void startProgress() {
+        changeStatus(ESTABLISHED, PROGRESS);
+    }
+
+    /*
+    * complete는 배송을 PROGRESS에서 DONE 상태로 옮기는 메서드입니다. DONE이 된 주문은 Order.cancel로 취소할 수 없습니다.
+    * */
+    public void complete() {
+        changeStatus(PROGRESS, DONE);
+    }
+
+    private void changeStatus(DeliveryStatus from, DeliveryStatus to) {
+        if (this.deliveryStatus != from) {
+            throw new IllegalStateException("배송 상태를 " + this.deliveryStatus + "에서 " + to + "(으)로 바꿀 수 없습니다");
+        }
+        this.deliveryStatus = to;
+        if (order != null) {
+            order.refreshSummaryStatus();
+        }
+    }
+
     /*
     * DeliveryStatus라는 열거형(Enum)을 정의하고 있습니다. 이 열거형은 배송 상태를 나타내는 상수들을 포함하고 있습니다.
     * 주요 요소와 설명은 다음과 같습니다:
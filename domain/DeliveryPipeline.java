@@ -0,0 +1,258 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/*
+* DeliveryPipeline은 ESTABLISHED 상태의 배송을 묶음(batch) 단위로 받아 PROGRESS, DONE 순서로 진행시키는 비동기 배송 처리기입니다.
+* 지난 실행에서 출고까지만 된 PROGRESS 배송은 배송 완료 단계부터 이어서 처리하고, 취소된 주문의 배송과 이미 끝난 배송은 건너뜁니다.
+* 작업 스레드 수(concurrency)를 고정하고, 동시에 처리 중인 배송 수를 Semaphore로 제한하여
+* 택배사(Carrier) 응답이 느려지면 제출하는 쪽이 기다리도록(backpressure) 합니다.
+* 작업 스레드는 택배사 호출만 하고, 배송 엔티티의 상태 변경(Delivery.startProgress/complete)은 process를 호출한 스레드에서 합니다.
+* 엔티티와 영속성 컨텍스트는 스레드 안전하지 않으므로, 택배사에는 호출한 스레드에서 미리 꺼낸 id와 주소만 넘깁니다.
+* 단계별(출고, 배송 완료) 처리 시간을 누적하여 평균 지연 시간을 확인할 수 있습니다.
+* */
+public class DeliveryPipeline implements AutoCloseable {
+
+    /*
+    * 실제 택배사 연동 지점입니다. 테스트나 로컬 환경에서는 바로 반환하는 구현으로 대체할 수 있습니다.
+    * 작업 스레드에서 호출됩니다.
+    * */
+    public interface Carrier {
+        void ship(Long deliveryId, Address address);
+
+        void deliver(Long deliveryId);
+    }
+
+    /*
+    * 단계별 처리 횟수와 누적 처리 시간(나노초)입니다.
+    * */
+    public static final class StageLatency {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+
+        private void record(long startNanos) {
+            count.increment();
+            totalNanos.add(System.nanoTime() - startNanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getAverageNanos() {
+            long n = count.sum();
+            return n == 0 ? 0 : totalNanos.sum() / n;
+        }
+    }
+
+    /*
+    * 한 번에 고를 수 있는 처리 대상 배송(ESTABLISHED, PROGRESS)입니다.
+    * */
+    private static final List<Delivery.DeliveryStatus> PENDING =
+            List.of(Delivery.DeliveryStatus.ESTABLISHED, Delivery.DeliveryStatus.PROGRESS);
+
+    /*
+    * 택배사 호출이 어느 단계까지 성공했는지입니다.
+    * */
+    private enum Stage {
+        NONE, SHIPPED, DELIVERED
+    }
+
+    private final Carrier carrier;
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+
+    private final StageLatency shipLatency = new StageLatency();
+    private final StageLatency deliverLatency = new StageLatency();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    public DeliveryPipeline(Carrier carrier, int concurrency, int maxInFlight) {
+        this.carrier = carrier;
+        this.executor = Executors.newFixedThreadPool(concurrency);
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /*
+    * 처리 대상 배송을 id 순서로 batchSize개씩 골라, 묶음마다 하나의 트랜잭션에서 process하고 커밋합니다.
+    * DONE까지 진행된 배송 수를 반환합니다. 실패해서 ESTABLISHED, PROGRESS로 남은 배송은 다음 실행에서 다시 고릅니다.
+    * */
+    public int processPending(EntityManagerFactory emf, int batchSize) throws InterruptedException {
+        int done = 0;
+        long lastId = 0;
+        while (true) {
+            long afterId = lastId;
+            long[] result;
+            try {
+                result = inTransaction(emf, em -> {
+                    List<Delivery> batch = selectPending(em, afterId, batchSize);
+                    if (batch.isEmpty()) {
+                        return null;
+                    }
+                    try {
+                        return new long[]{process(batch), batch.get(batch.size() - 1).getId()};
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("배송 처리가 중단되었습니다", e);
+                    }
+                });
+            } catch (IllegalStateException e) {
+                if (e.getCause() instanceof InterruptedException) {
+                    throw (InterruptedException) e.getCause();
+                }
+                throw e;
+            }
+            if (result == null) {
+                return done;
+            }
+            done += (int) result[0];
+            lastId = result[1];
+        }
+    }
+
+    /*
+    * id가 afterId보다 큰 처리 대상 배송(ESTABLISHED, PROGRESS)을 id 순서로 batchSize개 고릅니다.
+    * 취소된 주문의 배송은 고르지 않으며, 택배사에 넘길 주소와 주문을 함께 읽어 묶음 처리 중 추가 조회가 없게 합니다.
+    * */
+    public static List<Delivery> selectPending(EntityManager em, long afterId, int batchSize) {
+        return em.createQuery("select d from Delivery d join fetch d.order o left join fetch d.addressRecord"
+                        + " where d.id > :afterId and d.deliveryStatus in :pending and o.orderStatus <> :canceled"
+                        + " order by d.id", Delivery.class)
+                .setParameter("afterId", afterId)
+                .setParameter("pending", PENDING)
+                .setParameter("canceled", OrderStatus.CANCELED)
+                .setMaxResults(batchSize)
+                .getResultList();
+    }
+
+    /*
+    * 배송 묶음을 처리하고 DONE까지 진행된 배송 수를 반환합니다.
+    * 택배사 호출은 작업 스레드에서 동시에 하고, 호출이 끝난 배송부터 순서대로 이 스레드에서 성공한 단계까지 상태를 옮깁니다.
+    * 취소된 주문의 배송과 ESTABLISHED, PROGRESS가 아닌 배송은 택배사에 넘기지 않고 건너뜁니다.
+    * PROGRESS 배송은 이미 출고되었으므로 배송 완료 단계만 요청합니다.
+    * 하나의 배송이 실패해도(택배사 오류, 처리 중 다른 트랜잭션이 상태를 바꾼 경우) 나머지는 계속 처리하며, 실패한 배송은 실패 시점의 상태로 남습니다.
+    * 엔티티 저장은 호출하는 쪽의 트랜잭션에서 묶음 단위로 처리합니다.
+    * */
+    public int process(List<Delivery> deliveries) throws InterruptedException {
+        List<Delivery> accepted = new ArrayList<>(deliveries.size());
+        List<Future<Stage>> futures = new ArrayList<>(deliveries.size());
+        for (Delivery delivery : deliveries) {
+            Order order = delivery.getOrder();
+            Delivery.DeliveryStatus status = delivery.getDeliveryStatus();
+            if ((order != null && order.getOrderStatus() == OrderStatus.CANCELED) || !PENDING.contains(status)) {
+                skipped.increment();
+                continue;
+            }
+            Long deliveryId = delivery.getId();
+            Address address = delivery.getAddress();
+            Stage from = status == Delivery.DeliveryStatus.PROGRESS ? Stage.SHIPPED : Stage.NONE;
+            inFlight.acquire();
+            try {
+                futures.add(executor.submit(() -> call(deliveryId, address, from)));
+            } catch (RuntimeException e) {
+                inFlight.release();
+                throw e;
+            }
+            accepted.add(delivery);
+        }
+        int done = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            Stage stage;
+            try {
+                stage = futures.get(i).get();
+            } catch (ExecutionException e) {
+                failures.increment();
+                continue;
+            }
+            Delivery delivery = accepted.get(i);
+            try {
+                if (stage != Stage.NONE && delivery.getDeliveryStatus() == Delivery.DeliveryStatus.ESTABLISHED) {
+                    delivery.startProgress();
+                }
+                if (stage == Stage.DELIVERED) {
+                    delivery.complete();
+                    done++;
+                }
+            } catch (IllegalStateException e) {
+                failures.increment();
+            }
+        }
+        return done;
+    }
+
+    /*
+    * 택배사에 from 다음 단계부터 출고와 배송 완료를 차례로 요청하고 성공한 단계를 반환합니다. 실패하면 실패 횟수에 더합니다.
+    * */
+    private Stage call(Long deliveryId, Address address, Stage from) {
+        Stage stage = from;
+        try {
+            if (stage == Stage.NONE) {
+                long start = System.nanoTime();
+                carrier.ship(deliveryId, address);
+                shipLatency.record(start);
+                stage = Stage.SHIPPED;
+            }
+
+            long start = System.nanoTime();
+            carrier.deliver(deliveryId);
+            deliverLatency.record(start);
+            return Stage.DELIVERED;
+        } catch (RuntimeException e) {
+            failures.increment();
+            return stage;
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    public StageLatency getShipLatency() {
+        return shipLatency;
+    }
+
+    public StageLatency getDeliverLatency() {
+        return deliverLatency;
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public long getSkippedCount() {
+        return skipped.sum();
+    }
+
+    private static <T> T inTransaction(EntityManagerFactory emf, Function<EntityManager, T> work) {
+        EntityManager em = emf.createEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            T result = work.apply(em);
+            tx.commit();
+            return result;
+        } catch (RuntimeException e) {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,199 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/*
+* DomainBackfill은 엔티티에 새로 생긴 컬럼과 행을 기존 데이터에 채워 넣는 데이터 보정 작업입니다.
+* 새 버전을 배포하기 전 마이그레이션 단계에서 한 번 실행하며, 몇 번을 다시 실행해도 결과가 같도록 이미 채워진 행은 건너뜁니다.
+* 테이블 전체를 한 트랜잭션으로 잠그지 않도록 id 구간(chunkSize)마다 전용 EntityManager의 트랜잭션을 따로 커밋합니다.
+* */
+public class DomainBackfill {
+
+    private final EntityManagerFactory emf;
+    private final int chunkSize;
+
+    public DomainBackfill(EntityManagerFactory emf, int chunkSize) {
+        this.emf = emf;
+        this.chunkSize = chunkSize;
+    }
+
+    /*
+    * Order.totalPrice가 생기기 전의 주문은 total_price가 비어 있으므로 주문 상품의 가격 * 수량 합계로 채웁니다.
+    * 주문 상품이 없는 주문은 합계가 0이므로 0인 행을 다시 계산해도 값이 바뀌지 않습니다.
+    * */
+    public int backfillOrderTotalPrices() {
+        return updateInIdRanges("orders",
+                "update orders o set total_price = (select coalesce(sum(oi.price * oi.count), 0)"
+                        + " from order_item oi where oi.order_id = o.id)"
+                        + " where o.id > ?1 and o.id <= ?2 and coalesce(o.total_price, 0) = 0");
+    }
+
+    /*
+    * Item, Order, Delivery에 @Version이 생기기 전의 행은 버전이 비어 있어 낙관적 락 갱신과 bulk update의 version + 1이 실패하므로 0으로 채웁니다.
+    * 비어 있는 행만 고치므로 여러 번 실행해도 됩니다.
+    * */
+    public int backfillVersions() {
+        int updated = updateInIdRanges("item",
+                "update item i set version = 0 where i.id > ?1 and i.id <= ?2 and i.version is null");
+        updated += updateInIdRanges("orders",
+                "update orders o set version = 0 where o.id > ?1 and o.id <= ?2 and o.version is null");
+        updated += updateInIdRanges("delivery",
+                "update delivery d set version = 0 where d.id > ?1 and d.id <= ?2 and d.version is null");
+        return updated;
+    }
+
+    /*
+    * Member.orderCount, Item.orderItemCount를 주문, 주문 상품 행 수로 다시 계산합니다.
+    * 값과 상관없이 모든 행을 count(*)로 다시 세므로 여러 번 실행해도 결과가 같고, 배포 뒤 증가가 시작된 행도 실제 행 수로 맞춰집니다.
+    * 버전도 함께 올려, 다시 세는 동안 개수를 읽어 둔 엔티티가 오래된 값으로 덮어쓰지 못하고 낙관적 락 충돌로 실패하게 합니다.
+    * Member.version이 생기기 전의 회원 행은 버전이 비어 있으므로 coalesce로 0부터 올립니다.
+    * */
+    public int backfillAssociationCounts() {
+        int updated = updateInIdRanges("member",
+                "update member m set order_count = (select count(*) from orders o where o.member_id = m.id),"
+                        + " version = coalesce(m.version, 0) + 1"
+                        + " where m.id > ?1 and m.id <= ?2");
+        updated += updateInIdRanges("item",
+                "update item i set order_item_count = (select count(*) from order_item oi where oi.item_id = i.id),"
+                        + " version = coalesce(i.version, 0) + 1"
+                        + " where i.id > ?1 and i.id <= ?2");
+        return updated;
+    }
+
+    /*
+    * OrderSummary가 생기기 전의 주문은 요약 행이 없어 Order.cancel 등에서 요약을 갱신할 수 없으므로 요약 행을 만들어 넣습니다.
+    * 요약 행이 없는 주문을 id 순서로 chunkSize개씩 읽어, 묶음마다 한 트랜잭션에서 저장합니다.
+    * */
+    public int backfillOrderSummaries() {
+        int created = 0;
+        long lastId = 0;
+        while (true) {
+            long afterId = lastId;
+            List<Long> ids = inTransaction(em -> {
+                List<Order> orders = em.createQuery("select o from Order o join fetch o.member join fetch o.delivery"
+                                + " where o.id > :afterId"
+                                + " and not exists (select s.orderId from OrderSummary s where s.orderId = o.id)"
+                                + " order by o.id", Order.class)
+                        .setParameter("afterId", afterId)
+                        .setMaxResults(chunkSize)
+                        .getResultList();
+                List<Long> page = new ArrayList<>(orders.size());
+                for (Order order : orders) {
+                    em.persist(OrderSummary.createOrderSummary(order));
+                    page.add(order.getId());
+                }
+                return page;
+            });
+            if (ids.isEmpty()) {
+                return created;
+            }
+            created += ids.size();
+            lastId = ids.get(ids.size() - 1);
+        }
+    }
+
+    /*
+    * 주소 사전(AddressRecord)이 생기기 전의 회원과 배송은 주소 문자열을 자기 행의 city, state, street, zipcode 컬럼에 가지고 있으므로,
+    * 그 값으로 주소 사전 행을 찾거나 만들고 address_record_id를 채웁니다. 주소 컬럼이 모두 비어 있는 행은 건너뜁니다.
+    * 모든 행을 옮긴 뒤 AddressBook.measureStorage로 줄어드는 크기를 확인하고 예전 주소 컬럼을 지웁니다.
+    * */
+    public int backfillAddressRecords() {
+        return backfillAddressRecords("member") + backfillAddressRecords("delivery");
+    }
+
+    private int backfillAddressRecords(String table) {
+        int updated = 0;
+        long lastId = 0;
+        while (true) {
+            long afterId = lastId;
+            long[] result = inTransaction(em -> {
+                List<?> rows = em.createNativeQuery("select id, city, state, street, zipcode from " + table
+                                + " where id > ?1 and address_record_id is null order by id")
+                        .setParameter(1, afterId)
+                        .setMaxResults(chunkSize)
+                        .getResultList();
+                if (rows.isEmpty()) {
+                    return null;
+                }
+                AddressBook addressBook = new AddressBook(em);
+                Map<Long, List<Long>> idsByRecord = new HashMap<>();
+                long last = afterId;
+                for (Object row : rows) {
+                    Object[] columns = (Object[]) row;
+                    last = ((Number) columns[0]).longValue();
+                    if (columns[1] == null && columns[2] == null && columns[3] == null && columns[4] == null) {
+                        continue;
+                    }
+                    Address address = new Address((String) columns[1], (String) columns[2], (String) columns[3],
+                            (String) columns[4]);
+                    idsByRecord.computeIfAbsent(addressBook.resolve(address).getId(), k -> new ArrayList<>()).add(last);
+                }
+                em.flush();
+                long changed = 0;
+                for (Map.Entry<Long, List<Long>> entry : idsByRecord.entrySet()) {
+                    changed += em.createNativeQuery("update " + table + " set address_record_id = ?1 where id in (?2)")
+                            .setParameter(1, entry.getKey())
+                            .setParameter(2, entry.getValue())
+                            .executeUpdate();
+                }
+                return new long[]{changed, last};
+            });
+            if (result == null) {
+                return updated;
+            }
+            updated += (int) result[0];
+            lastId = result[1];
+        }
+    }
+
+    /*
+    * sql을 (from, to] id 구간마다 실행하고 바뀐 행 수의 합을 반환합니다. sql은 ?1, ?2로 구간을 받습니다.
+    * id는 샤드와 시각이 들어간 큰 값이라 촘촘하지 않으므로, 구간 끝은 실제 id를 chunkSize개씩 키셋으로 읽어 정합니다.
+    * */
+    private int updateInIdRanges(String table, String sql) {
+        int updated = 0;
+        long from = 0;
+        while (true) {
+            long lower = from;
+            List<?> ids = inTransaction(em -> em.createNativeQuery("select id from " + table + " where id > ?1 order by id")
+                    .setParameter(1, lower)
+                    .setMaxResults(chunkSize)
+                    .getResultList());
+            if (ids.isEmpty()) {
+                return updated;
+            }
+            long upper = ((Number) ids.get(ids.size() - 1)).longValue();
+            updated += inTransaction(em -> em.createNativeQuery(sql)
+                    .setParameter(1, lower)
+                    .setParameter(2, upper)
+                    .executeUpdate());
+            from = upper;
+        }
+    }
+
+    private <T> T inTransaction(Function<EntityManager, T> work) {
+        EntityManager em = emf.createEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            T result = work.apply(em);
+            tx.commit();
+            return result;
+        } catch (RuntimeException e) {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.OptimisticLockException;
+import org.hibernate.StaleStateException;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+* DomainCommandRetrier는 낙관적 락 충돌이 난 도메인 명령(Order.cancel, OrderItem.createOrderItem 등)을 다시 실행하는 재시도 계층입니다.
+* Item, Order, Delivery에 @Version이 붙어 있으므로 동시에 같은 엔티티를 바꾸면 한쪽이 OptimisticLockException으로 실패합니다.
+* 실패한 쪽은 지수 백오프(exponential backoff)에 무작위 지연(jitter)을 더해 기다린 뒤,
+* 엔티티를 새로 읽는 것부터 포함된 명령 전체를 새 트랜잭션에서 다시 실행합니다.
+* */
+public class DomainCommandRetrier {
+
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+
+    /*
+    * 실행 횟수, 충돌 횟수, 재시도를 모두 쓰고도 실패한 횟수입니다. 충돌률은 conflicts / attempts로 구합니다.
+    * */
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    public DomainCommandRetrier(int maxAttempts, long baseBackoffMillis, long maxBackoffMillis) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /*
+    * command는 트랜잭션 하나를 열고 엔티티를 다시 읽어 명령을 적용하는 단위여야 합니다.
+    * 같은 영속성 컨텍스트의 오래된 엔티티로 다시 실행하면 같은 충돌이 반복되기 때문입니다.
+    * 낙관적 락 충돌이 아닌 예외(예: "need more stock")는 재시도하지 않고 그대로 던집니다.
+    * */
+    public <T> T execute(Supplier<T> command) {
+        for (int attempt = 1; ; attempt++) {
+            attempts.increment();
+            try {
+                return command.get();
+            } catch (RuntimeException e) {
+                if (!isConflict(e)) {
+                    throw e;
+                }
+                conflicts.increment();
+                if (attempt >= maxAttempts) {
+                    exhausted.increment();
+                    throw e;
+                }
+                backoff(attempt);
+            }
+        }
+    }
+
+    public void execute(Runnable command) {
+        execute(() -> {
+            command.run();
+            return null;
+        });
+    }
+
+    /*
+    * 같은 충돌이 계층마다 다른 예외로 나타나므로 원인(cause)을 따라가며 세 가지를 모두 확인합니다.
+    * JPA: OptimisticLockException
+    * Hibernate 네이티브 API와 flush: StaleStateException(StaleObjectStateException 포함)
+    * 스프링 예외 변환: OptimisticLockingFailureException(ObjectOptimisticLockingFailureException 포함)
+    * */
+    private boolean isConflict(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof OptimisticLockException
+                    || t instanceof StaleStateException
+                    || t instanceof OptimisticLockingFailureException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+        long sleep = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        try {
+            Thread.sleep(sleep);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("retry interrupted", e);
+        }
+    }
+
+    public long getAttemptCount() {
+        return attempts.sum();
+    }
+
+    public long getConflictCount() {
+        return conflicts.sum();
+    }
+
+    public long getExhaustedCount() {
+        return exhausted.sum();
+    }
+}
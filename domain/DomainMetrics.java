@@ -0,0 +1,222 @@
+package likelion.springbootsunny.domain;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+* DomainMetrics는 주문, 재고 도메인 연산의 처리 시간과 횟수를 모으는 계측 계층입니다.
+* Order.createOrder, Order.cancel, Item.removeStock이 직접 호출하며,
+* 비활성화(기본값) 상태에서는 start()가 0을 반환하고 record 메서드가 바로 반환하므로 volatile 읽기 한 번 외에는 비용이 없습니다.
+* 활성화 상태에서도 주요 경로에서는 미리 만들어 둔 카운터와 배열만 갱신하므로 객체를 새로 만들지 않습니다.
+* */
+public final class DomainMetrics {
+
+    private static final DomainMetrics GLOBAL = new DomainMetrics();
+
+    public static DomainMetrics global() {
+        return GLOBAL;
+    }
+
+    /*
+    * Histogram은 값을 2의 거듭제곱 구간(bucket) 64개로 나누어 세는 히스토그램입니다.
+    * 구간의 상한값으로 백분위수를 구하므로 최대 2배 오차가 있지만, 기록할 때 락이나 할당이 없습니다.
+    * */
+    public static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+
+        public void record(long value) {
+            long v = Math.max(value, 0);
+            buckets.incrementAndGet(v == 0 ? 0 : 63 - Long.numberOfLeadingZeros(v));
+            count.increment();
+            sum.add(v);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getSum() {
+            return sum.sum();
+        }
+
+        /*
+        * quantile(0.0 ~ 1.0)에 해당하는 값의 상한을 반환합니다. 예: percentile(0.99)
+        * */
+        public long percentile(double quantile) {
+            long total = 0;
+            for (int i = 0; i < 64; i++) {
+                total += buckets.get(i);
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < 64; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return i == 63 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private volatile boolean enabled;
+
+    private final Histogram createOrderNanos = new Histogram();
+    private final Histogram cancelOrderNanos = new Histogram();
+    private final Histogram removeStockNanos = new Histogram();
+    private final Histogram itemsPerOrder = new Histogram();
+
+    private final LongAdder removeStockCount = new LongAdder();
+    private final LongAdder stockOutCount = new LongAdder();
+    private final Map<Long, LongAdder> stockOutByItem = new ConcurrentHashMap<>();
+    private final LongAdder[] ordersByStatus = new LongAdder[OrderStatus.values().length];
+
+    public DomainMetrics() {
+        for (int i = 0; i < ordersByStatus.length; i++) {
+            ordersByStatus[i] = new LongAdder();
+        }
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /*
+    * 측정 시작 시각을 반환합니다. 비활성화 상태에서는 System.nanoTime()도 호출하지 않고 0을 반환합니다.
+    * 측정 도중 활성화되면 0으로 시작한 측정이 record에 들어오므로, record 메서드는 start가 0이면 기록하지 않습니다.
+    * */
+    public long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public void recordOrderCreated(long start, int itemCount) {
+        if (!enabled || start == 0) {
+            return;
+        }
+        createOrderNanos.record(System.nanoTime() - start);
+        itemsPerOrder.record(itemCount);
+        ordersByStatus[OrderStatus.ORDERED.ordinal()].increment();
+    }
+
+    public void recordOrderCancelled(long start) {
+        if (!enabled || start == 0) {
+            return;
+        }
+        cancelOrderNanos.record(System.nanoTime() - start);
+        ordersByStatus[OrderStatus.CANCELED.ordinal()].increment();
+    }
+
+    public void recordRemoveStock(long start) {
+        if (!enabled || start == 0) {
+            return;
+        }
+        removeStockNanos.record(System.nanoTime() - start);
+        removeStockCount.increment();
+    }
+
+    /*
+    * "need more stock" 예외가 발생한 경우입니다. 상품별 카운터는 상품마다 처음 한 번만 생성됩니다.
+    * */
+    public void recordStockOut(Long itemId) {
+        if (!enabled) {
+            return;
+        }
+        removeStockCount.increment();
+        stockOutCount.increment();
+        if (itemId != null) {
+            stockOutByItem.computeIfAbsent(itemId, id -> new LongAdder()).increment();
+        }
+    }
+
+    public Histogram getCreateOrderNanos() {
+        return createOrderNanos;
+    }
+
+    public Histogram getCancelOrderNanos() {
+        return cancelOrderNanos;
+    }
+
+    public Histogram getRemoveStockNanos() {
+        return removeStockNanos;
+    }
+
+    public Histogram getItemsPerOrder() {
+        return itemsPerOrder;
+    }
+
+    public long getStockOutCount() {
+        return stockOutCount.sum();
+    }
+
+    public long getStockOutCount(Long itemId) {
+        LongAdder adder = stockOutByItem.get(itemId);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /*
+    * 재고 감소 요청 중 재고 부족으로 실패한 비율입니다.
+    * */
+    public double getStockOutRate() {
+        long total = removeStockCount.sum();
+        return total == 0 ? 0.0 : (double) stockOutCount.sum() / total;
+    }
+
+    public long getOrderCount(OrderStatus orderStatus) {
+        return ordersByStatus[orderStatus.ordinal()].sum();
+    }
+
+    /*
+    * 현재 값을 이름 -> 값 형태로 복사합니다. 테스트에서 메모리 내 레지스트리로 사용하거나 파일로 내보낼 때 사용합니다.
+    * */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        putHistogram(values, "order.create.nanos", createOrderNanos);
+        putHistogram(values, "order.cancel.nanos", cancelOrderNanos);
+        putHistogram(values, "item.removeStock.nanos", removeStockNanos);
+        putHistogram(values, "order.items", itemsPerOrder);
+        values.put("item.stockOut.count", stockOutCount.sum());
+        for (Map.Entry<Long, LongAdder> entry : stockOutByItem.entrySet()) {
+            values.put("item.stockOut.count.item." + entry.getKey(), entry.getValue().sum());
+        }
+        for (OrderStatus orderStatus : OrderStatus.values()) {
+            values.put("order.status." + orderStatus.name().toLowerCase(), getOrderCount(orderStatus));
+        }
+        return values;
+    }
+
+    private void putHistogram(Map<String, Long> values, String name, Histogram histogram) {
+        values.put(name + ".count", histogram.getCount());
+        values.put(name + ".p50", histogram.percentile(0.50));
+        values.put(name + ".p99", histogram.percentile(0.99));
+    }
+
+    /*
+    * 현재 값을 "이름 값" 형식의 텍스트 파일로 내보냅니다.
+    * */
+    public void writeTo(Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            for (Map.Entry<String, Long> entry : snapshot().entrySet()) {
+                writer.write(entry.getKey());
+                writer.write(' ');
+                writer.write(Long.toString(entry.getValue()));
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package likelion.springbootsunny.domain;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/*
+* IdempotentOrderSubmitter는 멱등성 키(idempotency key)로 중복 주문 요청을 걸러내는 주문 제출기입니다.
+* 클라이언트가 타임아웃 뒤 같은 키로 다시 요청하면 주문 생성(재고 감소 포함)을 다시 실행하지 않고 처음 만든 주문을 반환합니다.
+* 1) 메모리 인덱스: 키 -> 처리 중이거나 커밋된 주문의 id(CompletableFuture). 동시에 들어온 중복 요청은 같은 결과를 기다립니다.
+*    결과는 처음 요청한 쪽의 트랜잭션이 커밋된 뒤에 채우고, 롤백되면 항목을 지웁니다. 그래서 커밋되지 않은 주문을 다른 요청에 돌려주지 않습니다.
+*    엔티티는 영속성 컨텍스트에 묶여 있으므로 id만 보관하고, 기다리던 요청은 자기 영속성 컨텍스트에서 orderLoader로 주문을 다시 읽습니다.
+* 2) 영속 인덱스: orders.idempotency_key unique 컬럼. 메모리에서 만료되었거나 재시작 뒤에 들어온 재요청은 DB에서 찾습니다.
+* 메모리 인덱스는 등록 순서를 유지하는 LinkedHashMap입니다. 모든 항목의 ttlMillis가 같으므로 등록 순서가 곧 만료 순서이고,
+* 요청마다 맨 앞에서부터 만료된 항목만 지우므로 정리 비용은 지운 항목 수에 비례합니다.
+* 만료되지 않은 항목이 maxEntries개이면 가장 오래된 항목부터 지워 크기가 maxEntries를 넘지 않습니다.
+* 처리 중인 항목이 밀려나면 그 키의 중복 요청은 메모리에서 걸러지지 않지만, 영속 인덱스의 unique 제약이 두 번째 저장을 막습니다.
+* */
+public class IdempotentOrderSubmitter {
+
+    private static final class Entry {
+        private final CompletableFuture<Long> orderId = new CompletableFuture<>();
+        private final long expiresAt;
+
+        private Entry(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /*
+    * entries 자체를 락으로 사용합니다. 락은 인덱스를 읽고 고치는 동안만 잡고, command는 락 밖에서 실행합니다.
+    * */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private final Function<String, Optional<Order>> persistedLookup;
+    private final Function<Long, Order> orderLoader;
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    /*
+    * persistedLookup은 idempotencyKey로 이미 저장된 주문을 찾는 함수입니다. (예: select o from Order o where o.idempotencyKey = :key)
+    * orderLoader는 id로 주문을 읽는 함수입니다. (예: id -> em.find(Order.class, id)) 호출한 스레드의 영속성 컨텍스트를 사용해야 합니다.
+    * */
+    public IdempotentOrderSubmitter(Function<String, Optional<Order>> persistedLookup, Function<Long, Order> orderLoader,
+                                    long ttlMillis, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.persistedLookup = persistedLookup;
+        this.orderLoader = orderLoader;
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    /*
+    * 같은 key로 처음 들어온 요청만 command를 실행합니다.
+    * command는 Order.createOrder(idempotencyKey, ...)로 key를 주문에 저장하고, 주문 상품 생성(재고 감소)까지 포함해야 합니다.
+    * command는 주문을 persist해야 합니다. (@ShardedId로 persist할 때 id가 정해집니다)
+    * command가 실패하거나 트랜잭션이 롤백되면 메모리 인덱스에서 지워지므로 같은 key로 다시 시도할 수 있습니다.
+    * 스프링 트랜잭션 밖에서 호출하면 command가 끝날 때 커밋된 것으로 보고 바로 결과를 채웁니다.
+    * */
+    public Order submit(String key, Supplier<Order> command) {
+        Entry existing;
+        Entry created = null;
+        synchronized (entries) {
+            long now = System.currentTimeMillis();
+            evictExpired(now);
+            existing = entries.get(key);
+            if (existing == null) {
+                while (entries.size() >= maxEntries) {
+                    evictEldest();
+                }
+                created = new Entry(now + ttlMillis);
+                entries.put(key, created);
+            }
+        }
+        if (existing != null) {
+            return orderLoader.apply(await(existing));
+        }
+        Entry entry = created;
+        try {
+            Optional<Order> persisted = persistedLookup.apply(key);
+            if (persisted.isPresent()) {
+                entry.orderId.complete(persisted.get().getId());
+                return persisted.get();
+            }
+            Order order = command.get();
+            Long orderId = order.getId();
+            if (orderId == null) {
+                throw new IllegalStateException("command must persist the order");
+            }
+            afterCommit(() -> entry.orderId.complete(orderId),
+                    () -> fail(key, entry, new IllegalStateException("order " + orderId + " was rolled back")));
+            return order;
+        } catch (RuntimeException e) {
+            fail(key, entry, e);
+            throw e;
+        }
+    }
+
+    private void fail(String key, Entry entry, RuntimeException cause) {
+        synchronized (entries) {
+            entries.remove(key, entry);
+        }
+        entry.orderId.completeExceptionally(cause);
+    }
+
+    /*
+    * 스프링 트랜잭션 안이면 커밋 뒤에 onCommit을, 롤백되면 onRollback을 실행합니다. 트랜잭션 동기화가 없으면 onCommit을 바로 실행합니다.
+    * */
+    private static void afterCommit(Runnable onCommit, Runnable onRollback) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            onCommit.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    onCommit.run();
+                } else {
+                    onRollback.run();
+                }
+            }
+        });
+    }
+
+    private Long await(Entry entry) {
+        try {
+            return entry.orderId.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /*
+    * 맨 앞(가장 먼저 만료되는 항목)부터 만료된 항목을 지우고, 만료되지 않은 항목을 만나면 멈춥니다.
+    * */
+    private void evictExpired(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expiresAt > now) {
+                return;
+            }
+            iterator.remove();
+        }
+    }
+
+    private void evictEldest() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        iterator.next();
+        iterator.remove();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
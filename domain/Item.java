@@ -4,6 +4,10 @@ package likelion.springbootsunny.domain;
 * */
 import jakarta.persistence.Entity;
 /*
+* jakarta.persistence.EntityListeners 패키지에서 EntityListeners 클래스를 임포트합니다. 이 클래스는 엔티티의 생명주기 이벤트를 받을 리스너를 지정하기 위해 사용됩니다.
+* */
+import jakarta.persistence.EntityListeners;
+/*
 * jakarta.persistence.GeneratedValue 패키지에서 GeneratedValue 클래스를 임포트합니다.
 * 이 클래스는 JPA 엔티티의 기본 키를 자동으로 생성하기 위한 애너테이션을 제공합니다.
 * */
@@ -17,9 +21,9 @@ import jakarta.persistence.Id;
 * */
 import lombok.Getter;
 /*
-* jakarta.persistence.OneToMany 패키지에서 OneToMany 클래스를 임포트합니다. 이 클래스는 JPA 엔티티 간의 일대다 관계를 매핑하기 위해 사용됩니다.
+* jakarta.persistence.Version 패키지에서 Version 클래스를 임포트합니다. 이 클래스는 낙관적 락에 사용할 버전 필드를 지정하기 위한 애너테이션을 제공합니다.
 * */
-import jakarta.persistence.OneToMany;
+import jakarta.persistence.Version;
 /*
 * lombok.NoArgsConstructor 패키지에서 NoArgsConstructor 클래스를 임포트합니다. 이 클래스는 인자 없는 생성자를 자동으로 생성하기 위해 사용됩니다.
 * */
@@ -32,14 +36,6 @@ import lombok.*;
 * org.hibernate.annotations.Comment 패키지에서 Comment 클래스를 임포트합니다. 이 클래스는 주석을 추가하기 위해 사용됩니다.
 * */
 import org.hibernate.annotations.Comment;
-/*
-* java.util.ArrayList 패키지에서 ArrayList 클래스를 임포트합니다. 이 클래스는 동적으로 크기가 조정되는 배열을 구현한 리스트입니다.
-* */
-import java.util.ArrayList;
-/*
-* java.util.List 패키지에서 List 인터페이스를 임포트합니다. 이 인터페이스는 순서가 있는 요소들의 컬렉션을 나타냅니다.
-* */
-import java.util.List;
 
 
 /*
@@ -49,9 +45,12 @@ import java.util.List;
  * @Getter 애너테이션은 해당 클래스의 필드에 대한 Getter 메서드를 자동으로 생성합니다. 이를 통해 필드 값에 접근할 수 있습니다.
  * @NoArgsConstructor 애너테이션은 인자 없는 생성자를 자동으로 생성합니다. 이를 통해 객체를 인스턴스화할 때 인자를 전달하지 않고 생성자를 호출할 수 있습니다.
  * @Comment 애너테이션은 엔티티나 테이블에 주석을 추가할 수 있습니다.
+ * @EntityListeners 애너테이션은 Item이 DB에 update 될 때 ItemCatalogCache의 캐시 항목을 무효화하도록 리스너를 등록합니다.
+ * 상품은 샤딩하지 않는 참조 테이블에만 두므로, ReferenceWriteGuard로 샤드 트랜잭션에서 재고를 바꾸지 못하게 합니다. (ShardRoutingDataSource 참고)
  * */
 
 @Entity
+@EntityListeners({ItemCatalogCache.ItemChangeListener.class, ShardRoutingDataSource.ReferenceWriteGuard.class})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -69,42 +68,58 @@ public class Item {
     private Long id;
 
     /*
-    * @OneToMany 애너테이션은 일대다 관계를 나타내는 매핑을 지정합니다.
-    * mappedBy 속성은 관계를 맺고 있는 반대쪽 엔티티의 필드를 지정합니다.
-    * 이 경우, "item"이라는 필드를 사용하여 Item 엔티티와 OrderItem 엔티티의 관계를 매핑합니다.
-    * List<OrderItem> 타입의 orderItem 필드를 선언합니다.
-    * 이 필드는 OrderItem 엔티티와의 일대다 관계를 나타내는데 사용될 것입니다. 초기화는 빈 ArrayList로 이루어집니다.
+    * @Version 애너테이션은 낙관적 락(optimistic lock)을 위한 버전 필드를 지정합니다.
+    * 재고가 동시에 바뀌면 나중에 커밋하는 쪽이 OptimisticLockException으로 실패하므로 갱신 손실(lost update)이 생기지 않습니다.
     * */
-    @OneToMany(mappedBy = "item")
-    private List<OrderItem> orderItem = new ArrayList<>();
+    @Version
+    private Long version;
+
+    /*
+    * private long orderItemCount;
+    * 이 상품을 담은 주문 상품(OrderItem)의 수입니다. OrderItem.setItem에서 1씩 증가합니다.
+    * 많이 팔린 상품이 수십만 개의 OrderItem을 메모리에 올리지 않도록 일대다 컬렉션(orderItem) 대신 개수만 유지하고,
+    * 주문 상품 목록은 AssociationPageQuery로 키셋 페이지 단위로 조회합니다.
+    * @Setter(AccessLevel.NONE): 개수는 increaseOrderItemCount로만 바뀌도록 Setter를 만들지 않습니다.
+    * */
+    @Setter(AccessLevel.NONE)
+    private long orderItemCount;
 
     /*
     * private String brand;
     * String 타입의 brand 필드를 선언합니다. 이 필드는 아이템의 브랜드를 나타냅니다.
     * private String name;
     * String 타입의 name 필드를 선언합니다. 이 필드는 아이템의 이름을 나타냅니다.
-    * private Integer price;
-    * Integer 타입의 price 필드를 선언합니다. 이 필드는 아이템의 가격을 나타냅니다.
-    * private Integer stock;
-    * Integer 타입의 stock 필드를 선언합니다. 이 필드는 아이템의 재고 수량을 나타냅니다.
+    * private Money price;
+    * Money 타입의 price 필드를 선언합니다. 이 필드는 아이템의 가격을 나타내며 MoneyConverter로 숫자 컬럼에 저장됩니다.
+    * private int stock;
+    * int 타입의 stock 필드를 선언합니다. 이 필드는 아이템의 재고 수량을 나타냅니다. 기본형이므로 계산할 때 박싱, 언박싱이 없습니다.
     * */
     private String brand;
     private String name;
-    private Integer price;
-    private Integer stock;
+    private Money price;
+    private int stock;
 
     /**
      * 비즈니스 로직
      */
+    /*
+    * increaseOrderItemCount는 주문 상품이 이 상품을 참조하게 될 때 OrderItem.setItem에서 호출됩니다.
+    * */
+    void increaseOrderItemCount() {
+        this.orderItemCount++;
+    }
+
     /*
     * @Comment 애너테이션은 엔티티나 테이블에 주석을 추가할 수 있습니다. 이 경우 "재고 추가"라는 주석이 addStock 메서드에 추가되었습니다.
     * public 접근 제어자와 void 반환 타입을 가지는 addStock 메서드를 선언합니다.
     * 이 메서드는 재고를 추가하는 비즈니스 로직을 수행합니다. int 타입의 quantity 매개변수를 받아들입니다.
-    * 현재 객체의 stock 필드에 quantity 값을 더하여 재고를 추가합니다.
+    * 현재 객체의 stock 필드에 quantity 값을 더하여 재고를 추가합니다. int 범위를 넘으면 ArithmeticException이 발생합니다.
+    * 재고가 바뀌었으므로 ItemCatalogCache의 재고 캐시를 무효화합니다.
     * */
     @Comment("재고 추가")
     public void addStock(int quantity) {
-        this.stock += quantity;
+        this.stock = Math.addExact(this.stock, quantity);
+        ItemCatalogCache.stockChanged(this.id);
     }
 
     /*
@@ -114,14 +129,19 @@ public class Item {
     * this.stock 필드에서 stockQuantity 값을 뺀 결과를 restStock 변수에 저장합니다. 이는 재고를 감소시킨 후 남은 재고를 나타냅니다.
     * restStock 값이 0보다 작은지 확인하는 조건문입니다. 만약 남은 재고가 0보다 작다면, 재고가 부족한 상태이므로 예외를 발생시킵니다.
     * IllegalStateException 예외를 생성하고 메시지로 "need more stock"를 설정하여 예외를 발생시킵니다. 이는 재고가 부족한 상태를 나타냅니다.
-    * 객체의 stock 필드를 restStock 값으로 업데이트하여 재고를 감소시킵니다.
+    * 객체의 stock 필드를 restStock 값으로 업데이트하여 재고를 감소시키고, ItemCatalogCache의 재고 캐시를 무효화합니다.
+    * DomainMetrics에 처리 시간과 재고 부족 횟수를 기록합니다. 계측이 꺼져 있으면 아무것도 기록하지 않습니다.
     * */
     @Comment("재고 감소")
     public void removeStock(int stockQuantity) {
-        int restStock = this.stock - stockQuantity;
+        long start = DomainMetrics.global().start();
+        int restStock = Math.subtractExact(this.stock, stockQuantity);
         if (restStock < 0) {
+            DomainMetrics.global().recordStockOut(this.id);
             throw new IllegalStateException("need more stock");
         }
         this.stock = restStock;
+        ItemCatalogCache.stockChanged(this.id);
+        DomainMetrics.global().recordRemoveStock(start);
     }
 }
\ No newline at end of file
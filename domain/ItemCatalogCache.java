@@ -0,0 +1,240 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.PostUpdate;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/*
+* ItemCatalogCache는 Item 조회를 위한 프로세스 내부의 2차 캐시입니다. 외부 캐시 서버 없이 동작합니다.
+* Item 중 브랜드, 이름, 가격은 거의 바뀌지 않지만 재고(stock)는 주문마다 바뀌므로 두 부분을 나누어 캐시합니다.
+* 재고가 바뀌면 Item.addStock/removeStock이 stockChanged를 호출하여 열려 있는 모든 캐시의 재고 항목만 무효화하고, 카탈로그 캐시는 그대로 둡니다.
+* Item이 DB에 update 되면 ItemChangeListener가 카탈로그와 재고를 모두 한 번 더 무효화합니다.
+* 캐시 미스 때 읽어 온 값은 읽기 시작한 뒤 같은 상품이 무효화되지 않은 경우에만 넣으므로, 오래된 값이 더 새 무효화를 덮어쓰지 않습니다.
+* 다만 flush 이후 커밋 전에 다른 스레드가 DB에서 읽은 커밋 이전 값은 다음 변경까지 남을 수 있으므로,
+* 캐시된 재고는 화면 표시용으로 쓰고 주문 가능 여부는 Item.removeStock이나 StockLedger가 최종 판단합니다.
+* 두 캐시 모두 최대 크기를 넘으면 가장 오래 사용되지 않은 항목(LRU)부터 제거합니다.
+* 다 쓴 캐시는 close로 무효화 대상 목록에서 빼야 합니다.
+* */
+public class ItemCatalogCache implements AutoCloseable {
+
+    /*
+    * Item의 변하지 않는 카탈로그 정보입니다. 캐시에서 꺼낸 값을 여러 스레드가 공유해도 안전하도록 불변으로 둡니다.
+    * */
+    public static final class Catalog {
+        private final Long id;
+        private final String brand;
+        private final String name;
+        private final Money price;
+
+        private Catalog(Item item) {
+            this.id = item.getId();
+            this.brand = item.getBrand();
+            this.name = item.getName();
+            this.price = item.getPrice();
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getBrand() {
+            return brand;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Money getPrice() {
+            return price;
+        }
+    }
+
+    /*
+    * Item 엔티티 리스너입니다. DB에 update 된 상품의 카탈로그와 재고를 모든 캐시에서 무효화합니다.
+    * */
+    public static class ItemChangeListener {
+        @PostUpdate
+        void afterUpdate(Item item) {
+            for (ItemCatalogCache cache : CACHES) {
+                cache.invalidate(item.getId());
+            }
+        }
+    }
+
+    private static final List<ItemCatalogCache> CACHES = new CopyOnWriteArrayList<>();
+
+    /*
+    * 무효화 도장(stamp)의 줄 수입니다. 상품 id를 줄 하나에 대응시켜 무효화할 때마다 그 줄의 값을 올립니다.
+    * 카탈로그와 재고는 도장을 따로 두어, 재고가 자주 바뀌어도 카탈로그 미스가 캐시에 값을 넣지 못하는 일이 없게 합니다.
+    * */
+    private static final int STAMP_STRIPES = 64;
+
+    /*
+    * 재고가 바뀐 상품의 재고 항목을 열려 있는 모든 캐시에서 무효화합니다. Item.addStock/removeStock에서 호출됩니다.
+    * */
+    static void stockChanged(Long itemId) {
+        if (itemId == null) {
+            return;
+        }
+        for (ItemCatalogCache cache : CACHES) {
+            cache.invalidateStock(itemId);
+        }
+    }
+
+    private final Map<Long, Catalog> catalogs;
+    private final Map<Long, Integer> stocks;
+    private final AtomicLongArray catalogStamps = new AtomicLongArray(STAMP_STRIPES);
+    private final AtomicLongArray stockStamps = new AtomicLongArray(STAMP_STRIPES);
+
+    /*
+    * hit, miss, eviction 횟수입니다. 여러 스레드가 동시에 증가시키므로 LongAdder를 사용합니다.
+    * */
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ItemCatalogCache(int maxSize) {
+        this.catalogs = lruMap(maxSize);
+        this.stocks = lruMap(maxSize);
+        CACHES.add(this);
+    }
+
+    /*
+    * accessOrder = true인 LinkedHashMap은 조회할 때마다 항목을 맨 뒤로 옮기므로, 맨 앞의 항목이 가장 오래 사용되지 않은 항목이 됩니다.
+    * */
+    private <V> Map<Long, V> lruMap(int maxSize) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+                if (size() > maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /*
+    * 카탈로그 정보를 조회합니다. 캐시에 없으면 loader로 Item을 읽어 카탈로그와 재고를 함께 채웁니다.
+    * 읽는 동안 같은 상품이 무효화되었으면 읽은 값을 반환만 하고 캐시에는 넣지 않습니다.
+    * */
+    public Catalog getCatalog(Long itemId, Function<Long, Item> loader) {
+        long catalogStamp;
+        synchronized (catalogs) {
+            Catalog catalog = catalogs.get(itemId);
+            if (catalog != null) {
+                hits.increment();
+                return catalog;
+            }
+            catalogStamp = catalogStamps.get(stripe(itemId));
+        }
+        long stockStamp = stockStamps.get(stripe(itemId));
+        misses.increment();
+        Item item = loader.apply(itemId);
+        Catalog catalog = new Catalog(item);
+        synchronized (catalogs) {
+            if (catalogStamps.get(stripe(itemId)) == catalogStamp) {
+                catalogs.put(itemId, catalog);
+            }
+        }
+        putStockIfUnchanged(item, stockStamp);
+        return catalog;
+    }
+
+    /*
+    * 재고를 조회합니다. 재고 캐시만 무효화된 경우에도 loader로 다시 읽습니다.
+    * 읽는 동안 같은 상품의 재고가 무효화되었으면 읽은 값을 반환만 하고 캐시에는 넣지 않습니다.
+    * */
+    public int getStock(Long itemId, Function<Long, Item> loader) {
+        long stamp;
+        synchronized (stocks) {
+            Integer stock = stocks.get(itemId);
+            if (stock != null) {
+                hits.increment();
+                return stock;
+            }
+            stamp = stockStamps.get(stripe(itemId));
+        }
+        misses.increment();
+        Item item = loader.apply(itemId);
+        putStockIfUnchanged(item, stamp);
+        return item.getStock();
+    }
+
+    private void putStockIfUnchanged(Item item, long stamp) {
+        synchronized (stocks) {
+            if (stockStamps.get(stripe(item.getId())) == stamp) {
+                stocks.put(item.getId(), item.getStock());
+            }
+        }
+    }
+
+    /*
+    * 커밋된 Item의 값을 캐시에 바로 써 넣습니다(write-through).
+    * */
+    public void put(Item item) {
+        synchronized (catalogs) {
+            catalogs.put(item.getId(), new Catalog(item));
+        }
+        putStock(item);
+    }
+
+    public void putStock(Item item) {
+        synchronized (stocks) {
+            stocks.put(item.getId(), item.getStock());
+        }
+    }
+
+    /*
+    * 재고 값만 무효화합니다. 도장을 올려 무효화 전에 시작한 캐시 미스가 오래된 값을 넣지 못하게 합니다.
+    * */
+    public void invalidateStock(Long itemId) {
+        synchronized (stocks) {
+            stockStamps.incrementAndGet(stripe(itemId));
+            stocks.remove(itemId);
+        }
+    }
+
+    /*
+    * 브랜드, 이름, 가격이 바뀐 경우 카탈로그와 재고를 모두 무효화합니다.
+    * */
+    public void invalidate(Long itemId) {
+        synchronized (catalogs) {
+            catalogStamps.incrementAndGet(stripe(itemId));
+            catalogs.remove(itemId);
+        }
+        invalidateStock(itemId);
+    }
+
+    private static int stripe(Long itemId) {
+        return (int) (itemId & (STAMP_STRIPES - 1));
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /*
+    * 재고 변경 무효화 대상에서 이 캐시를 뺍니다.
+    * */
+    @Override
+    public void close() {
+        CACHES.remove(this);
+    }
+}
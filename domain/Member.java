@@ -4,11 +4,12 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 
-import java.util.ArrayList;
-import java.util.List;
-
 
 @Entity
+/*
+* @EntityListeners: 회원은 샤딩하지 않는 참조 테이블에만 두므로 샤드 트랜잭션에서 저장, 수정하지 못하게 합니다. (ShardRoutingDataSource 참고)
+* */
+@EntityListeners(ShardRoutingDataSource.ReferenceWriteGuard.class)
 @Getter
 @NoArgsConstructor
 /*
@@ -18,43 +19,72 @@ public class Member {
     @Id @GeneratedValue
     private Long id;
 
+    /*
+    * @Version: 낙관적 락을 위한 버전 필드입니다. 같은 회원의 주문이 동시에 생성되면 orderCount 증가가 겹치는데,
+    * 나중에 커밋하는 쪽이 OptimisticLockException으로 실패하고 DomainCommandRetrier로 다시 실행되므로 증가분을 잃지 않습니다.
+    * 이 필드가 생기기 전의 회원 행은 DomainBackfill.backfillAssociationCounts가 0으로 채웁니다.
+    * */
+    @Version
+    private Long version;
+
     /*
     * String 타입의 name 필드를 선언합니다. 이 필드는 회원의 이름을 나타냅니다.
     * */
     private String name;
 
     /*
-    * @OneToMany 애너테이션은 일대다 관계를 나타내는 매핑을 지정합니다. mappedBy 속성은 관계를 맺고 있는 반대쪽 엔티티의 필드를 지정합니다.
-    * 이 경우, "member"라는 필드를 사용하여 Member 엔티티와 Order 엔티티의 관계를 매핑합니다.
-    * List<Order> 타입의 orderList 필드를 선언합니다. 이 필드는 Order 엔티티와의 일대다 관계를 나타내는데 사용될 것입니다.
-    * 초기화는 빈 ArrayList로 이루어집니다.
+    * long 타입의 orderCount 필드를 선언합니다. 이 필드는 회원의 주문 수를 나타내며 Order.setMember에서 1씩 증가합니다.
+    * 주문 목록 전체를 메모리에 올리는 일대다 컬렉션(orderList) 대신 개수만 유지하고,
+    * 주문 목록은 AssociationPageQuery나 OrderSummaryQuery로 키셋 페이지 단위로 조회합니다.
+    * */
+    private long orderCount;
+
+    /*
+    * @ManyToOne(fetch = LAZY), @JoinColumn(name = "address_record_id"): 회원의 주소를 주소 사전(AddressRecord) 행으로 참조합니다.
+    * 주소 문자열을 회원 행에 복사하지 않고 id 하나만 저장하며, 같은 주소의 회원과 배송은 같은 행을 참조합니다.
     * */
-    @OneToMany(mappedBy = "member")
-    private List<Order> orderList = new ArrayList<>();
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "address_record_id")
+    private AddressRecord addressRecord;
 
     /*
-    * @Embedded 애너테이션은 Address 클래스를 임베디드(내장) 타입으로 사용한다는 것을 나타냅니다. Address 필드가 엔티티의 일부로 저장될 것임을 의미합니다.
-    * Address 타입의 address 필드를 선언합니다. 이 필드는 회원의 주소를 나타냅니다.
+    * increaseOrderCount는 주문이 이 회원을 참조하게 될 때 Order.setMember에서 호출됩니다.
     * */
-    @Embedded
-    private Address address;
+    void increaseOrderCount() {
+        this.orderCount++;
+    }
+
+    /*
+    * getAddress는 회원의 주소 값을 반환합니다. 주소가 없는 회원은 null입니다.
+    * */
+    public Address getAddress() {
+        return addressRecord == null ? null : addressRecord.getAddress();
+    }
 
     /*
     * public static 접근 제어자와 Member 객체를 생성하는 createMember 정적 메서드를 선언합니다.
-    * 이 메서드는 주어진 이름과 주소를 사용하여 회원을 생성합니다.
+    * 이 메서드는 주어진 이름과 주소를 사용하여 회원을 생성합니다. 주소는 AddressBook.resolve로 얻은 주소 사전 행입니다.
     * Member member = new Member();
     * Member 객체를 생성합니다.
     * member.name = name;
     * member 객체의 name 필드에 주어진 name 값을 설정합니다.
-    * member.address = address;
-    * member 객체의 address 필드에 주어진 address 값을 설정합니다.
+    * member.addressRecord = addressRecord;
+    * member 객체의 addressRecord 필드에 주어진 주소 사전 행을 설정합니다.
     * return member;
     * 생성된 member 객체를 반환합니다.
     * */
-    public static Member createMember(String name, Address address) {
+    public static Member createMember(String name, AddressRecord addressRecord) {
         Member member = new Member();
         member.name = name;
-        member.address = address;
+        member.addressRecord = addressRecord;
         return member;
     }
+
+    /*
+    * changeAddress는 회원의 주소를 다른 주소 사전 행으로 바꿉니다. 주소 사전 행 자체는 바뀌지 않습니다.
+    * 이미 생성된 배송(Delivery)은 주문할 때의 주소 행을 따로 참조하므로 영향을 받지 않습니다.
+    * */
+    public void changeAddress(AddressRecord addressRecord) {
+        this.addressRecord = addressRecord;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package likelion.springbootsunny.domain;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.util.Currency;
+
+/*
+* Money는 금액을 나타내는 불변 값 객체입니다.
+* 금액은 통화의 최소 단위(원화는 1원, 달러는 1센트)를 long으로 저장하므로 소수 오차가 없고,
+* 더하기와 곱하기는 Math.addExact/multiplyExact로 계산하여 long 범위를 넘으면 값이 조용히 틀리는 대신 ArithmeticException이 발생합니다.
+* DB에는 MoneyConverter로 최소 단위 금액 하나의 숫자 컬럼으로 저장됩니다.
+* */
+@Getter
+@EqualsAndHashCode
+public final class Money {
+
+    public static final Currency KRW = Currency.getInstance("KRW");
+
+    private final long amount;
+    private final Currency currency;
+
+    private Money(long amount, Currency currency) {
+        this.amount = amount;
+        this.currency = currency;
+    }
+
+    public static Money of(long amount, Currency currency) {
+        return new Money(amount, currency);
+    }
+
+    public static Money won(long amount) {
+        return new Money(amount, KRW);
+    }
+
+    public Money plus(Money other) {
+        checkCurrency(other);
+        return new Money(Math.addExact(amount, other.amount), currency);
+    }
+
+    public Money multiply(int quantity) {
+        return new Money(Math.multiplyExact(amount, (long) quantity), currency);
+    }
+
+    private void checkCurrency(Money other) {
+        if (!currency.equals(other.currency)) {
+            throw new IllegalArgumentException("currency mismatch: " + currency + ", " + other.currency);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return amount + " " + currency.getCurrencyCode();
+    }
+}
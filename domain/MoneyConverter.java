@@ -0,0 +1,30 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/*
+* MoneyConverter는 Money를 최소 단위 금액 하나의 숫자 컬럼으로 저장하는 JPA 변환기입니다.
+* autoApply = true이므로 Money 타입 필드에는 @Convert 없이 자동으로 적용됩니다.
+* 이 쇼핑몰은 원화(KRW) 하나만 사용하므로 통화는 컬럼에 저장하지 않고 읽을 때 KRW로 복원합니다.
+* 원화는 최소 단위가 1원이라 기존 Integer 가격 컬럼의 값을 그대로 읽을 수 있습니다.
+* */
+@Converter(autoApply = true)
+public class MoneyConverter implements AttributeConverter<Money, Long> {
+
+    @Override
+    public Long convertToDatabaseColumn(Money money) {
+        if (money == null) {
+            return null;
+        }
+        if (!Money.KRW.equals(money.getCurrency())) {
+            throw new IllegalArgumentException("only KRW can be stored: " + money);
+        }
+        return money.getAmount();
+    }
+
+    @Override
+    public Money convertToEntityAttribute(Long amount) {
+        return amount == null ? null : Money.won(amount);
+    }
+}
@@ -3,6 +3,7 @@ package likelion.springbootsunny.domain;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.BatchSize;
 /*
 * java.time 패키지에서 LocalDateTime 클래스를 가져오는 import 문입니다.
 * LocalDateTime 클래스는 날짜와 시간 정보를 포함하는 불변(immutable)의 클래스로, 연도, 월, 일, 시, 분, 초 등의 정보를 다룰 수 있습니다.
@@ -36,15 +37,43 @@ import static lombok.AccessLevel.PROTECTED;
 name 속성을 사용하여 매핑할 테이블의 이름을 지정할 수 있습니다.
 */
     @Table(name = "orders") // 이거 안하면 에러
+/*
+@NamedEntityGraph는 주문을 어떤 모양으로 함께 읽어 올지 정한 fetch plan입니다. OrderFetchPlan에서 이름으로 골라 사용합니다.
+Order.summary: 회원까지, Order.withDelivery: 회원과 배송(배송지 주소 포함)까지, Order.full: 회원, 배송, 주문 상품과 각 주문 상품의 상품까지 한 번의 조인으로 읽어 옵니다.
+*/
+    @NamedEntityGraph(name = "Order.summary", attributeNodes = @NamedAttributeNode("member"))
+    @NamedEntityGraph(name = "Order.withDelivery", attributeNodes = {
+            @NamedAttributeNode("member"),
+            @NamedAttributeNode(value = "delivery", subgraph = "delivery.address")
+    }, subgraphs = @NamedSubgraph(name = "delivery.address", attributeNodes = @NamedAttributeNode("addressRecord")))
+    @NamedEntityGraph(name = "Order.full", attributeNodes = {
+            @NamedAttributeNode("member"),
+            @NamedAttributeNode(value = "delivery", subgraph = "delivery.address"),
+            @NamedAttributeNode(value = "orderItemList", subgraph = "orderItem.item")
+    }, subgraphs = {
+            @NamedSubgraph(name = "delivery.address", attributeNodes = @NamedAttributeNode("addressRecord")),
+            @NamedSubgraph(name = "orderItem.item", attributeNodes = @NamedAttributeNode("item"))
+    })
     @Getter
     @NoArgsConstructor(access = PROTECTED)
 
     public class Order {
         @Id
-        @GeneratedValue
+        /*
+        * @ShardedId: 회원의 샤드 번호가 들어간 snowflake id를 insert 전에 만듭니다(ShardedIdentifierGenerator).
+        * IDENTITY나 기본 전략과 달리 insert 전에 id를 알 수 있으므로 JDBC 배치 insert가 가능하고, id만으로 샤드를 찾을 수 있습니다.
+        * 샤딩을 끄면 orders_seq pooled 시퀀스로 id를 만듭니다.
+        * */
+        @ShardedId(sequenceName = "orders_seq")
         /*private Long id: 주문 식별자를 나타내는 필드입니다.*/
         private Long id;
 
+        /*
+        * @Version: 낙관적 락을 위한 버전 필드입니다. 같은 주문을 동시에 취소하면 한쪽만 성공합니다.
+        * */
+        @Version
+        private Long version;
+
         /*
          @ManyToOne(fetch = LAZY), @JoinColumn(name = "member_id"): Member 엔티티와의 다대일 관계를 설정합니다.
          fetch = LAZY는 회원 엔티티를 지연로딩으로 가져오도록 지정하고, name = "member_id"는 외래 키 컬럼의 이름을 member_id로 설정합니다.
@@ -66,8 +95,10 @@ name 속성을 사용하여 매핑할 테이블의 이름을 지정할 수 있
         * @OneToMany(mappedBy = "order", cascade = ALL): OrderItem 엔티티와의 일대다 관계를 설정합니다.
         * mappedBy = "order"는 OrderItem 엔티티의 order 필드를 매핑하여 양방향 관계를 형성합니다.
         * cascade = ALL은 모든 변경 작업이 주문 상품 엔티티에도 적용되도록 지정합니다.
+        * @BatchSize(size = 100): 여러 주문의 orderItemList를 지연 로딩할 때 주문마다 쿼리를 보내지 않고 100개씩 IN 쿼리로 묶어 읽어 옵니다.
         * */
         @OneToMany(mappedBy = "order", cascade = ALL)
+        @BatchSize(size = 100)
         private List<OrderItem> orderItemList = new ArrayList<>();
 
         /*
@@ -82,14 +113,51 @@ name 속성을 사용하여 매핑할 테이블의 이름을 지정할 수 있
         @Enumerated(EnumType.STRING)
         private OrderStatus orderStatus;
 
+        /*
+        * private long totalPrice: 주문의 총 가격을 저장하는 컬럼입니다.
+        * 주문 상품이 추가될 때마다 누적되므로 주문 목록에서 총 가격을 보여줄 때 orderItemList를 로딩하지 않아도 됩니다.
+        * */
+        private long totalPrice;
+
+        /*
+        * private String idempotencyKey: 클라이언트가 주문 요청마다 붙여 보내는 멱등성 키입니다.
+        * unique 제약으로 같은 키의 주문이 두 번 저장되지 않으며, IdempotentOrderSubmitter가 재요청 시 원래 주문을 찾는 데 사용합니다.
+        * */
+        @Column(unique = true, updatable = false)
+        private String idempotencyKey;
+
+        /*
+        * @OneToOne(mappedBy = "order", cascade = ALL, optional = false): 주문 내역 화면용 요약 행입니다.
+        * 주문과 함께 저장되고, 주문이 생성되거나 취소될 때 갱신됩니다.
+        * */
+        @OneToOne(mappedBy = "order", fetch = LAZY, cascade = ALL, optional = false)
+        private OrderSummary orderSummary;
+
+        /*
+        * @OneToMany(mappedBy = "order", cascade = ALL): 주문에서 발생한 아웃박스 이벤트입니다.
+        * 주문과 같은 트랜잭션에서 함께 저장되며 OrderEventRelay가 구독자에게 전달합니다.
+        * */
+        @OneToMany(mappedBy = "order", cascade = ALL)
+        private List<OrderEvent> eventList = new ArrayList<>();
+
         // 연관관계 편의 메서드
         /*
         * public void setMember(Member member): 회원을 설정하는 연관관계 편의 메서드입니다.
-        * 회원을 설정한 후, 회원 객체의 주문 목록에 현재 주문 객체를 추가합니다.
+        * 회원을 설정한 후, 회원 객체의 주문 수를 1 증가시킵니다. 회원의 주문 목록은 로딩하지 않습니다.
         * */
         public void setMember(Member member) {
             this.member = member;
-            member.getOrderList().add(this);
+            member.increaseOrderCount();
+        }
+
+        /*
+        * public static Order createOrder(String idempotencyKey, Member member, OrderItem... orderItems): 멱등성 키를 가진 주문을 생성하는 정적 메서드입니다.
+        * IdempotentOrderSubmitter를 통해 호출되어, 같은 키로 다시 들어온 요청은 주문을 새로 만들지 않고 처음 주문을 돌려받습니다.
+        * */
+        public static Order createOrder(String idempotencyKey, Member member, OrderItem... orderItems) {
+            Order order = createOrder(member, orderItems);
+            order.idempotencyKey = idempotencyKey;
+            return order;
         }
 
         /*
@@ -99,53 +167,105 @@ name 속성을 사용하여 매핑할 테이블의 이름을 지정할 수 있
         * setMember 메서드를 사용하여 주문 객체에 회원을 설정합니다.
         * orderDate 필드에 현재 시간을 저장합니다.
         * orderStatus 필드를 OrderStatus.ORDERED로 설정합니다.
-        * Delivery.createDelivery 메서드를 사용하여 주문 객체와 회원의 주소 정보를 기반으로 배송 객체를 생성하고, 주문 객체의 delivery 필드에 할당합니다.
-        * 반복문을 통해 주문 상품들을 주문 객체의 orderItemList에 추가하고, 주문 상품 객체의 setOrder 메서드를 사용하여 주문 객체를 설정합니다.
+        * Delivery.createDelivery 메서드를 사용하여 주문 객체와 회원의 주소를 기반으로 배송 객체를 생성하고, 주문 객체의 delivery 필드에 할당합니다.
+        * 반복문을 통해 주문 상품 객체의 setOrder 메서드를 사용하여 주문 객체를 설정합니다. orderItemList 추가와 총 가격 누적은 addOrderItem에서 처리합니다.
+        * 주문 내역 화면용 요약(OrderSummary)을 생성하고, 주문 생성과 재고 감소 이벤트를 아웃박스에 추가합니다.
         * 생성된 주문 객체를 반환합니다.
         * */
         public static Order createOrder(Member member, OrderItem... orderItems) {
+            long start = DomainMetrics.global().start();
             Order order = new Order();
             order.setMember(member);
             order.orderDate = LocalDateTime.now();
             order.orderStatus = OrderStatus.ORDERED;
-            order.delivery = Delivery.createDelivery(order, member.getAddress().getCity(),
-                    member.getAddress().getState(),
-                    member.getAddress().getStreet(),
-                    member.getAddress().getZipcode());
+            order.delivery = Delivery.createDelivery(order, member.getAddressRecord());
             for (OrderItem orderItem : orderItems) {
-                order.orderItemList.add(orderItem);
                 orderItem.setOrder(order);
             }
+            order.orderSummary = OrderSummary.createOrderSummary(order);
+            order.eventList.add(OrderEvent.orderCreated(order));
+            for (OrderItem orderItem : order.orderItemList) {
+                order.eventList.add(OrderEvent.stockChanged(order, orderItem.getItem(), -orderItem.getCount()));
+            }
+            DomainMetrics.global().recordOrderCreated(start, order.orderItemList.size());
             return order;
         }
 
+        /*
+        * public boolean isClosed(): 더 이상 바뀌지 않는 주문인지 확인하는 메서드입니다.
+        * 취소된 주문이거나 배송이 완료(DONE)된 주문은 닫힌 주문으로 보고 보관(OrderArchive) 대상이 됩니다.
+        * */
+        public boolean isClosed() {
+            return orderStatus == OrderStatus.CANCELED
+                    || delivery.getDeliveryStatus() == Delivery.DeliveryStatus.DONE;
+        }
+
+        /*
+        * void addOrderItem(OrderItem orderItem): 주문 상품을 orderItemList에 추가하고 총 가격을 누적하는 메서드입니다.
+        * OrderItem.setOrder에서만 호출되며, Math.addExact로 합산하므로 long 범위를 넘으면 예외가 발생합니다.
+        * */
+        void addOrderItem(OrderItem orderItem) {
+            orderItemList.add(orderItem);
+            totalPrice = Math.addExact(totalPrice, orderItem.getTotalPrice());
+        }
+
         /*
         * public void cancel(): 주문을 취소하는 메서드입니다. 다음 동작을 수행합니다:
         * 배송 객체의 배송 상태(deliveryStatus)가 Delivery.DeliveryStatus.DONE인 경우에는 예외를 발생시킵니다.
+        * 이미 취소된 주문이면 예외를 발생시켜, 재시도한 취소가 재고를 두 번 복구하지 않게 합니다.
         * 주문 객체의 orderStatus를 OrderStatus.CANCELED로 설정합니다.
         * 반복문을 통해 주문 상품들을 순회하면서 cancel 메서드를 호출하여 각 주문 상품을 취소 처리합니다.
+        * 주문 취소와 재고 복구 이벤트를 아웃박스에 추가하고, 주문 요약(OrderSummary)의 상태를 갱신합니다.
         * */
         public void cancel() {
             if (delivery.getDeliveryStatus() == Delivery.DeliveryStatus.DONE) {
                 throw new IllegalStateException("배송 완료했다 양아치야");
             }
+            if (orderStatus == OrderStatus.CANCELED) {
+                throw new IllegalStateException("이미 취소된 주문입니다");
+            }
+            long start = DomainMetrics.global().start();
             this.orderStatus = OrderStatus.CANCELED;
+            eventList.add(OrderEvent.orderCancelled(this));
             for (OrderItem orderItem : orderItemList) {
                 orderItem.cancel();
+                eventList.add(OrderEvent.stockChanged(this, orderItem.getItem(), orderItem.getCount()));
             }
+            refreshSummary();
+            DomainMetrics.global().recordOrderCancelled(start);
         }
 
         /*
-        * public int getTotalPrice(): 주문의 총 가격을 계산하는 메서드입니다. 다음 동작을 수행합니다:
-        * totalPrice 변수를 0으로 초기화합니다.
-        * 반복문을 통해 주문 상품들을 순회하면서 각 주문 상품의 총 가격을 구하여 totalPrice에 누적합니다.
-        * 최종적으로 계산된 총 가격을 반환합니다.
+        * void refreshSummary(): 주문이나 배송 상태가 바뀐 뒤 주문 요약(OrderSummary)을 갱신하는 메서드입니다.
+        * 요약 행이 없는 주문이면 새로 만들며, cascade = ALL이므로 flush 때 함께 저장됩니다.
+        * 요약 행이 생기기 전의 주문은 배포 전에 DomainBackfill.backfillOrderSummaries로 채워 둡니다.
         * */
-        public int getTotalPrice() {
-            int totalPrice = 0;
-            for (OrderItem orderItem : orderItemList) {
-                totalPrice += orderItem.getTotalPrice();
+        void refreshSummary() {
+            if (orderSummary == null) {
+                orderSummary = OrderSummary.createOrderSummary(this);
+            } else {
+                orderSummary.refresh(this);
             }
+        }
+
+        /*
+        * void refreshSummaryStatus(): 배송 상태가 바뀐 뒤 주문 요약의 상태 컬럼만 갱신하는 메서드입니다.
+        * 주문 상품 수와 총 가격은 배송 상태와 무관하므로 orderItemList를 로딩하지 않습니다.
+        * */
+        void refreshSummaryStatus() {
+            if (orderSummary == null) {
+                orderSummary = OrderSummary.createOrderSummary(this);
+            } else {
+                orderSummary.refreshStatus(this);
+            }
+        }
+
+        /*
+        * public long getTotalPrice(): 주문의 총 가격을 반환하는 메서드입니다.
+        * 주문 상품이 추가될 때 addOrderItem에서 미리 누적해 둔 값을 반환하므로 orderItemList를 순회하지 않습니다.
+        * 취소된 주문도 주문 상품은 그대로 남아 있으므로 총 가격은 바뀌지 않습니다.
+        * */
+        public long getTotalPrice() {
             return totalPrice;
         }
     }
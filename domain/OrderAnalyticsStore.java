@@ -0,0 +1,316 @@
+package likelion.springbootsunny.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+* OrderAnalyticsStore는 대시보드 집계(상품별, 브랜드별, 도시별 매출)를 위한 프로세스 내부의 컬럼형 저장소입니다.
+* 주문 상품 한 줄을 한 행으로 보고, 값을 객체가 아닌 기본형 배열(컬럼)에 저장합니다. 가격은 최소 단위 금액(long)으로 저장합니다.
+* 상품 id, 브랜드, 도시는 사전(dictionary)에서 int 코드로, 주문 상태는 ordinal로 바꾸어 저장합니다.
+* 집계는 행 범위를 나누어 fork-join으로 병렬 스캔하므로 OLTP 테이블을 건드리지 않고 밀리초 단위로 응답합니다.
+* 적재는 OrderEventRelay를 구독하여 아웃박스 이벤트로 합니다. 아웃박스는 id가 아니라 발행 여부로 읽으므로,
+* pooled 시퀀스 때문에 큰 id가 먼저 커밋되어도 늦게 커밋된 작은 id의 주문을 놓치지 않습니다.
+* */
+public class OrderAnalyticsStore {
+
+    private static final int SCAN_THRESHOLD = 1 << 16;
+
+    /*
+    * 값 <-> int 코드 사전입니다. 코드는 0부터 등록 순서대로 부여됩니다.
+    * */
+    private static final class Dictionary<T> {
+        private final Map<T, Integer> codes = new HashMap<>();
+        private final List<T> values = new ArrayList<>();
+
+        private int encode(T value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        private int size() {
+            return values.size();
+        }
+
+        private T decode(int code) {
+            return values.get(code);
+        }
+    }
+
+    private long[] orderIds = new long[1024];
+    private int[] items = new int[1024];
+    private long[] prices = new long[1024];
+    private int[] counts = new int[1024];
+    private int[] brands = new int[1024];
+    private int[] cities = new int[1024];
+    private int[] statuses = new int[1024];
+    private int size;
+
+    private final Dictionary<Long> itemDictionary = new Dictionary<>();
+    private final Dictionary<String> brandDictionary = new Dictionary<>();
+    private final Dictionary<String> cityDictionary = new Dictionary<>();
+
+    /*
+    * 주문 id -> 그 주문의 첫 행 번호. 한 주문의 행은 연속해서 저장되므로 상태가 바뀔 때 이 행부터 갱신합니다.
+    * */
+    private final Map<Long, Integer> firstRowByOrder = new HashMap<>();
+
+    /*
+    * relay가 전달하는 주문 생성, 취소 이벤트로 저장소를 갱신하도록 구독합니다.
+    * relay의 트랜잭션 안에서 호출되므로 이벤트의 주문과 주문 상품을 지연 로딩할 수 있습니다.
+    * */
+    public void subscribeTo(OrderEventRelay relay) {
+        relay.subscribe(this::accept);
+    }
+
+    /*
+    * 구독자가 실패하면 relay가 같은 묶음을 다시 전달하므로, 이미 적재한 주문의 생성 이벤트는 건너뜁니다.
+    * */
+    public synchronized void accept(OrderEvent event) {
+        switch (event.getEventType()) {
+            case ORDER_CREATED:
+                ingestIfAbsent(event.getOrder());
+                break;
+            case ORDER_CANCELLED:
+                updateStatus(event.getOrder().getId(), OrderStatus.CANCELED);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /*
+    * 이미 저장된 주문을 처음 한 번 적재(초기 적재)할 때 사용합니다. 이미 적재한 주문은 건너뜁니다.
+    * 그 뒤의 변경은 아웃박스 구독(subscribeTo)으로 받습니다.
+    * */
+    public synchronized int refresh(List<Order> orders) {
+        int ingested = 0;
+        for (Order order : orders) {
+            if (ingestIfAbsent(order)) {
+                ingested++;
+            }
+        }
+        return ingested;
+    }
+
+    private boolean ingestIfAbsent(Order order) {
+        if (firstRowByOrder.containsKey(order.getId())) {
+            return false;
+        }
+        ingest(order);
+        return true;
+    }
+
+    private void ingest(Order order) {
+        int city = cityDictionary.encode(order.getDelivery().getCity());
+        firstRowByOrder.put(order.getId(), size);
+        for (OrderItem orderItem : order.getOrderItemList()) {
+            ensureCapacity(size + 1);
+            orderIds[size] = order.getId();
+            items[size] = itemDictionary.encode(orderItem.getItem().getId());
+            prices[size] = orderItem.getPrice().getAmount();
+            counts[size] = orderItem.getCount();
+            brands[size] = brandDictionary.encode(orderItem.getItem().getBrand());
+            cities[size] = city;
+            statuses[size] = order.getOrderStatus().ordinal();
+            size++;
+        }
+    }
+
+    /*
+    * 이미 적재한 주문의 상태가 바뀌었을 때(예: 취소) 그 주문의 행들만 갱신합니다.
+    * */
+    public synchronized void updateStatus(Long orderId, OrderStatus orderStatus) {
+        Integer row = firstRowByOrder.get(orderId);
+        if (row == null) {
+            return;
+        }
+        for (int i = row; i < size && orderIds[i] == orderId; i++) {
+            statuses[i] = orderStatus.ordinal();
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= orderIds.length) {
+            return;
+        }
+        int newLength = Math.max(capacity, orderIds.length * 2);
+        orderIds = Arrays.copyOf(orderIds, newLength);
+        items = Arrays.copyOf(items, newLength);
+        prices = Arrays.copyOf(prices, newLength);
+        counts = Arrays.copyOf(counts, newLength);
+        brands = Arrays.copyOf(brands, newLength);
+        cities = Arrays.copyOf(cities, newLength);
+        statuses = Arrays.copyOf(statuses, newLength);
+    }
+
+    /*
+    * 조건에 맞는 주문 상품의 매출(price * count) 합계입니다. orderStatus가 null이면 모든 상태를 포함합니다.
+    * */
+    public long sumRevenue(OrderStatus orderStatus) {
+        Snapshot snapshot = snapshot();
+        return ForkJoinPool.commonPool().invoke(
+                new GroupSum(snapshot, null, 1, filter(orderStatus), false, 0, snapshot.size))[0];
+    }
+
+    public Map<Long, Long> revenueByItem(OrderStatus orderStatus) {
+        Snapshot snapshot = snapshot();
+        return decode(aggregate(snapshot, snapshot.items, snapshot.itemCount, orderStatus, false), itemDictionary);
+    }
+
+    public Map<String, Long> revenueByBrand(OrderStatus orderStatus) {
+        Snapshot snapshot = snapshot();
+        return decode(aggregate(snapshot, snapshot.brands, snapshot.brandCount, orderStatus, false), brandDictionary);
+    }
+
+    public Map<String, Long> revenueByCity(OrderStatus orderStatus) {
+        Snapshot snapshot = snapshot();
+        return decode(aggregate(snapshot, snapshot.cities, snapshot.cityCount, orderStatus, false), cityDictionary);
+    }
+
+    /*
+    * 조건에 맞는 주문 상품 행(주문 한 건의 상품 한 줄) 수입니다. orderStatus가 null이면 모든 상태를 포함합니다.
+    * */
+    public long count(OrderStatus orderStatus) {
+        Snapshot snapshot = snapshot();
+        return ForkJoinPool.commonPool().invoke(
+                new GroupSum(snapshot, null, 1, filter(orderStatus), true, 0, snapshot.size))[0];
+    }
+
+    public Map<Long, Long> countByItem(OrderStatus orderStatus) {
+        Snapshot snapshot = snapshot();
+        return decode(aggregate(snapshot, snapshot.items, snapshot.itemCount, orderStatus, true), itemDictionary);
+    }
+
+    public Map<String, Long> countByBrand(OrderStatus orderStatus) {
+        Snapshot snapshot = snapshot();
+        return decode(aggregate(snapshot, snapshot.brands, snapshot.brandCount, orderStatus, true), brandDictionary);
+    }
+
+    public Map<String, Long> countByCity(OrderStatus orderStatus) {
+        Snapshot snapshot = snapshot();
+        return decode(aggregate(snapshot, snapshot.cities, snapshot.cityCount, orderStatus, true), cityDictionary);
+    }
+
+    private static long[] aggregate(Snapshot snapshot, int[] groups, int groupCount, OrderStatus orderStatus,
+                                    boolean countRows) {
+        return ForkJoinPool.commonPool().invoke(
+                new GroupSum(snapshot, groups, groupCount, filter(orderStatus), countRows, 0, snapshot.size));
+    }
+
+    public synchronized int getRowCount() {
+        return size;
+    }
+
+    private static int filter(OrderStatus orderStatus) {
+        return orderStatus == null ? -1 : orderStatus.ordinal();
+    }
+
+    private synchronized <T> Map<T, Long> decode(long[] sums, Dictionary<T> dictionary) {
+        Map<T, Long> result = new LinkedHashMap<>();
+        for (int code = 0; code < sums.length; code++) {
+            if (sums[code] != 0) {
+                result.put(dictionary.decode(code), sums[code]);
+            }
+        }
+        return result;
+    }
+
+    /*
+    * 집계 시작 시점의 배열 참조와 행 수입니다. 적재는 항상 size 뒤쪽에만 쓰므로 스캔하는 동안 락을 잡지 않아도 됩니다.
+    * 상태 열만은 updateStatus가 이미 있는 행을 고쳐 쓰므로, 스캔 도중 취소된 주문의 행 일부만 바뀐 값을 읽지 않도록 락 안에서 size만큼 복사합니다.
+    * */
+    private static final class Snapshot {
+        private final long[] prices;
+        private final int[] counts;
+        private final int[] items;
+        private final int[] brands;
+        private final int[] cities;
+        private final int[] statuses;
+        private final int size;
+        private final int itemCount;
+        private final int brandCount;
+        private final int cityCount;
+
+        private Snapshot(OrderAnalyticsStore store) {
+            this.prices = store.prices;
+            this.counts = store.counts;
+            this.items = store.items;
+            this.brands = store.brands;
+            this.cities = store.cities;
+            this.statuses = Arrays.copyOf(store.statuses, store.size);
+            this.size = store.size;
+            this.itemCount = store.itemDictionary.size();
+            this.brandCount = store.brandDictionary.size();
+            this.cityCount = store.cityDictionary.size();
+        }
+    }
+
+    private synchronized Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /*
+    * 행 범위 [from, to)를 반씩 나누어 병렬로 그룹별 매출 합계를 구합니다. groups가 null이면 전체 합계 하나만 구합니다.
+    * countRows이면 매출 대신 행 수를 셉니다.
+    * */
+    private static final class GroupSum extends RecursiveTask<long[]> {
+        private final Snapshot snapshot;
+        private final int[] groups;
+        private final int groupCount;
+        private final int status;
+        private final boolean countRows;
+        private final int from;
+        private final int to;
+
+        private GroupSum(Snapshot snapshot, int[] groups, int groupCount, int status, boolean countRows,
+                         int from, int to) {
+            this.snapshot = snapshot;
+            this.groups = groups;
+            this.groupCount = groupCount;
+            this.status = status;
+            this.countRows = countRows;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from <= SCAN_THRESHOLD) {
+                long[] sums = new long[groupCount];
+                for (int i = from; i < to; i++) {
+                    if (status >= 0 && snapshot.statuses[i] != status) {
+                        continue;
+                    }
+                    int group = groups == null ? 0 : groups[i];
+                    if (countRows) {
+                        sums[group]++;
+                    } else {
+                        sums[group] = Math.addExact(sums[group],
+                                Math.multiplyExact(snapshot.prices[i], (long) snapshot.counts[i]));
+                    }
+                }
+                return sums;
+            }
+            int mid = (from + to) >>> 1;
+            GroupSum left = new GroupSum(snapshot, groups, groupCount, status, countRows, from, mid);
+            left.fork();
+            long[] right = new GroupSum(snapshot, groups, groupCount, status, countRows, mid, to).compute();
+            long[] sums = left.join();
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] = Math.addExact(sums[i], right[i]);
+            }
+            return sums;
+        }
+    }
+}
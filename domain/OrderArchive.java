@@ -0,0 +1,568 @@
+package likelion.springbootsunny.domain;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.stream.Stream;
+
+/*
+* OrderArchive는 닫힌 주문(Order.isClosed)을 운영 테이블에서 옮겨 담는 압축된 추가 전용(append-only) 보관 저장소입니다.
+* 주문 하나는 수백 바이트뿐이라 따로 압축하면 Deflate가 반복되는 값(날짜, 상태 이름 등)을 거의 줄이지 못하므로,
+* 주문을 최대 BLOCK_RECORDS개씩 묶은 블록 하나를 한 번에 압축하여 세그먼트 파일(segment-00000.arc ...) 끝에 이어 쓰고,
+* 세그먼트가 maxSegmentBytes를 넘으면 새 세그먼트를 엽니다.
+* 블록 형식: [주문 수 4바이트 | 압축 길이 4바이트 | CRC32 4바이트 | 주문 id 8바이트 * 주문 수 | Deflate 압축된 주문 데이터]
+* 블록 안의 주문 id 목록은 압축하지 않으므로, 열 때 압축을 풀지 않고 블록 인덱스(주문 id -> 블록 위치)를 다시 만듭니다.
+* CRC32는 주문 수, 압축 길이, 주문 id 목록, 압축 데이터를 덮으므로 읽을 때와 인덱스를 다시 만들 때 깨진 블록을 알아챕니다.
+* 주문을 찾을 때는 블록 하나를 읽어 압축을 풀고 그 안에서 주문을 찾으며, 여러 주문을 찾을 때(findAll)는 같은 블록을 한 번만 풉니다.
+* 운영 테이블에서 옮기는 작업은 OrderArchiveJob이, 운영 테이블과 보관 저장소를 이어서 찾는 읽기 경로는 OrderLookup이 맡습니다.
+* */
+public class OrderArchive implements AutoCloseable {
+
+    private static final int HEADER_BYTES = Integer.BYTES * 3;
+
+    /*
+    * 블록 하나에 묶는 주문 수입니다. 클수록 압축률이 좋아지지만 주문 하나를 찾을 때 풀어야 하는 양이 늘어납니다.
+    * */
+    private static final int BLOCK_RECORDS = 64;
+
+    /*
+    * 인덱스를 다시 만들 때 깨진 주문 수 값으로 큰 배열을 잡지 않도록 두는 상한입니다.
+    * */
+    private static final int MAX_BLOCK_RECORDS = 1 << 16;
+
+    /*
+    * 세그먼트에서 읽은 블록입니다. end는 블록이 끝나는 위치입니다.
+    * */
+    private static final class Block {
+        private final long[] orderIds;
+        private final byte[] compressed;
+        private final long end;
+
+        private Block(long[] orderIds, byte[] compressed, long end) {
+            this.orderIds = orderIds;
+            this.compressed = compressed;
+            this.end = end;
+        }
+    }
+
+    /*
+    * 보관된 주문의 읽기 전용 스냅샷입니다. 운영 테이블에서 삭제된 뒤에도 주문 내역을 보여줄 수 있는 값만 담습니다.
+    * */
+    public static final class ArchivedOrder {
+        private final long orderId;
+        private final long memberId;
+        private final LocalDateTime orderDate;
+        private final OrderStatus orderStatus;
+        private final Delivery.DeliveryStatus deliveryStatus;
+        private final long totalPrice;
+        private final List<Line> lines;
+
+        private ArchivedOrder(long orderId, long memberId, LocalDateTime orderDate, OrderStatus orderStatus,
+                              Delivery.DeliveryStatus deliveryStatus, long totalPrice, List<Line> lines) {
+            this.orderId = orderId;
+            this.memberId = memberId;
+            this.orderDate = orderDate;
+            this.orderStatus = orderStatus;
+            this.deliveryStatus = deliveryStatus;
+            this.totalPrice = totalPrice;
+            this.lines = Collections.unmodifiableList(lines);
+        }
+
+        public long getOrderId() {
+            return orderId;
+        }
+
+        public long getMemberId() {
+            return memberId;
+        }
+
+        public LocalDateTime getOrderDate() {
+            return orderDate;
+        }
+
+        public OrderStatus getOrderStatus() {
+            return orderStatus;
+        }
+
+        public Delivery.DeliveryStatus getDeliveryStatus() {
+            return deliveryStatus;
+        }
+
+        public long getTotalPrice() {
+            return totalPrice;
+        }
+
+        public List<Line> getLines() {
+            return lines;
+        }
+    }
+
+    /*
+    * 주문 id(long) -> 위치(long)를 두 개의 long 배열에 담는 열린 주소(open addressing) 해시 인덱스입니다.
+    * HashMap<Long, Long>은 항목마다 Entry와 Long 두 개를 만들어 수십 바이트를 쓰지만, 여기서는 항목당 배열 칸 두 개(부하율 0.5에서 32바이트)만 씁니다.
+    * 주문 id는 0보다 크므로 0을 빈 칸 표시로 사용합니다. 삭제는 하지 않습니다.
+    * */
+    private static final class LocationIndex {
+        private long[] keys = new long[1024];
+        private long[] values = new long[1024];
+        private int size;
+
+        private long get(long orderId) {
+            int mask = keys.length - 1;
+            for (int i = slot(orderId, mask); ; i = (i + 1) & mask) {
+                if (keys[i] == orderId) {
+                    return values[i];
+                }
+                if (keys[i] == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        private boolean contains(long orderId) {
+            return get(orderId) >= 0;
+        }
+
+        private void put(long orderId, long location) {
+            if (orderId <= 0) {
+                throw new IllegalArgumentException("order id must be positive: " + orderId);
+            }
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int i = slot(orderId, mask);
+            while (keys[i] != 0 && keys[i] != orderId) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == 0) {
+                size++;
+            }
+            keys[i] = orderId;
+            values[i] = location;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldValues.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int slot(long orderId, int mask) {
+            long h = orderId * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+
+    public static final class Line {
+        private final long itemId;
+        private final long price;
+        private final int count;
+
+        private Line(long itemId, long price, int count) {
+            this.itemId = itemId;
+            this.price = price;
+            this.count = count;
+        }
+
+        public long getItemId() {
+            return itemId;
+        }
+
+        public long getPrice() {
+            return price;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+
+    /*
+    * 블록 인덱스: 주문 id -> 주문이 들어 있는 블록의 (세그먼트 번호 << 40 | 세그먼트 안의 위치)
+    * */
+    private final LocationIndex index = new LocationIndex();
+    private int segment;
+    private FileChannel writer;
+
+    public OrderArchive(Path directory, long maxSegmentBytes) throws IOException {
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        Files.createDirectories(directory);
+        rebuildIndex();
+        this.writer = openSegment(segment);
+    }
+
+    /*
+    * 닫힌 주문만 골라 보관하고 보관되어 있는 주문 id를 반환합니다. 주문은 BLOCK_RECORDS개씩 블록으로 묶어 압축합니다.
+    * 반환 전에 force로 디스크에 기록하므로, 호출하는 쪽은 반환된 id의 주문을 같은 배치에서 운영 테이블에서 삭제하면 됩니다.
+    * 이전 실행에서 보관만 하고 삭제하지 못한 주문은 다시 쓰지 않고 id만 반환하여 이번에 삭제되게 합니다.
+    * */
+    public synchronized List<Long> archive(List<Order> orders) throws IOException {
+        List<Long> archived = new ArrayList<>(orders.size());
+        Set<Long> seen = new HashSet<>();
+        List<Order> block = new ArrayList<>(BLOCK_RECORDS);
+        for (Order order : orders) {
+            if (!order.isClosed() || !seen.add(order.getId())) {
+                continue;
+            }
+            if (!index.contains(order.getId())) {
+                block.add(order);
+                if (block.size() == BLOCK_RECORDS) {
+                    writeBlock(block);
+                    block.clear();
+                }
+            }
+            archived.add(order.getId());
+        }
+        if (!block.isEmpty()) {
+            writeBlock(block);
+        }
+        writer.force(false);
+        return archived;
+    }
+
+    private void writeBlock(List<Order> orders) throws IOException {
+        long[] orderIds = new long[orders.size()];
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(orders.size() * 256);
+        try (DataOutputStream out = new DataOutputStream(raw)) {
+            for (int i = 0; i < orders.size(); i++) {
+                orderIds[i] = orders.get(i).getId();
+                byte[] encoded = encode(orders.get(i));
+                out.writeInt(encoded.length);
+                out.write(encoded);
+            }
+        }
+        byte[] compressed = compress(raw.toByteArray());
+        int blockBytes = HEADER_BYTES + Long.BYTES * orderIds.length + compressed.length;
+        if (writer.size() > 0 && writer.size() + blockBytes > maxSegmentBytes) {
+            writer.force(false);
+            writer.close();
+            writer = openSegment(++segment);
+        }
+        long position = writer.size();
+        ByteBuffer buffer = ByteBuffer.allocate(blockBytes);
+        buffer.putInt(orderIds.length).putInt(compressed.length).putInt(checksum(orderIds, compressed));
+        for (long orderId : orderIds) {
+            buffer.putLong(orderId);
+        }
+        buffer.put(compressed).flip();
+        while (buffer.hasRemaining()) {
+            writer.write(buffer);
+        }
+        long location = ((long) segment << 40) | position;
+        for (long orderId : orderIds) {
+            index.put(orderId, location);
+        }
+    }
+
+    /*
+    * 보관된 주문을 id로 읽어 옵니다. 운영 테이블에서 주문을 찾지 못했을 때 이어서 호출하는 읽기 경로(read-through)입니다.
+    * */
+    public Optional<ArchivedOrder> find(long orderId) {
+        return Optional.ofNullable(findAll(List.of(orderId)).get(orderId));
+    }
+
+    /*
+    * 보관된 주문들을 id로 읽어 옵니다. 블록 인덱스로 주문을 블록별로 모아 블록 하나를 한 번만 읽고 풉니다.
+    * 블록은 세그먼트와 위치 순서로 읽습니다. 보관되지 않은 id는 결과에 없습니다.
+    * */
+    public Map<Long, ArchivedOrder> findAll(Collection<Long> orderIds) {
+        Map<Long, List<Long>> byBlock = new TreeMap<>();
+        synchronized (this) {
+            for (Long orderId : orderIds) {
+                long location = index.get(orderId);
+                if (location >= 0) {
+                    byBlock.computeIfAbsent(location, key -> new ArrayList<>()).add(orderId);
+                }
+            }
+        }
+        Map<Long, ArchivedOrder> found = new LinkedHashMap<>();
+        FileChannel reader = null;
+        int readerSegment = -1;
+        try {
+            for (Map.Entry<Long, List<Long>> entry : byBlock.entrySet()) {
+                int blockSegment = (int) (entry.getKey() >>> 40);
+                long position = entry.getKey() & ((1L << 40) - 1);
+                if (blockSegment != readerSegment) {
+                    if (reader != null) {
+                        reader.close();
+                    }
+                    reader = FileChannel.open(segmentPath(blockSegment), StandardOpenOption.READ);
+                    readerSegment = blockSegment;
+                }
+                Block block = readBlock(reader, position);
+                if (block == null) {
+                    throw new IOException("corrupted archive block at segment " + blockSegment + ", " + position);
+                }
+                Set<Long> wanted = new HashSet<>(entry.getValue());
+                try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(decompress(block.compressed)))) {
+                    for (long orderId : block.orderIds) {
+                        byte[] encoded = new byte[in.readInt()];
+                        in.readFully(encoded);
+                        if (wanted.contains(orderId)) {
+                            found.put(orderId, decode(encoded));
+                        }
+                    }
+                }
+            }
+            return found;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                    // 읽기는 끝났으므로 닫기 실패는 결과에 영향이 없습니다.
+                }
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return index.size;
+    }
+
+    /*
+    * 운영 테이블에 남아 있는 주문을 보관된 주문과 같은 모양으로 바꿉니다. 읽기 경로가 두 저장소의 결과를 같은 타입으로 돌려주기 위해 사용합니다.
+    * */
+    static ArchivedOrder snapshot(Order order) {
+        List<Line> lines = new ArrayList<>(order.getOrderItemList().size());
+        for (OrderItem orderItem : order.getOrderItemList()) {
+            lines.add(new Line(orderItem.getItem().getId(), orderItem.getPrice().getAmount(), orderItem.getCount()));
+        }
+        return new ArchivedOrder(order.getId(), order.getMember().getId(), order.getOrderDate(), order.getOrderStatus(),
+                order.getDelivery().getDeliveryStatus(), order.getTotalPrice(), lines);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    /*
+    * 세그먼트를 앞에서부터 훑어 인덱스를 만듭니다. 길이가 음수이거나 파일 끝을 넘는 블록, CRC가 맞지 않는 블록에서 멈춥니다.
+    * 쓰는 도중 중단된 블록은 마지막 세그먼트의 끝에만 생길 수 있으므로 그 위치부터 잘라내고 다시 쓰며,
+    * 앞쪽 세그먼트에서 깨진 블록을 만나면 보관된 주문을 잃지 않도록 잘라내지 않고 실패합니다.
+    * */
+    private void rebuildIndex() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = (int) files.filter(path -> path.getFileName().toString().endsWith(".arc")).count();
+        }
+        segment = Math.max(segment - 1, 0);
+        for (int i = 0; i <= segment; i++) {
+            Path path = segmentPath(i);
+            if (!Files.exists(path)) {
+                continue;
+            }
+            long position;
+            long fileSize;
+            try (FileChannel reader = FileChannel.open(path, StandardOpenOption.READ)) {
+                fileSize = reader.size();
+                position = scanSegment(reader, i);
+            }
+            if (position < fileSize) {
+                if (i < segment) {
+                    throw new IOException("corrupted archive segment " + path + " at " + position);
+                }
+                truncateTo(path, position);
+            }
+        }
+    }
+
+    /*
+    * 세그먼트의 올바른 블록을 인덱스에 넣고, 마지막으로 올바른 블록이 끝나는 위치를 반환합니다.
+    * 압축은 풀지 않고 블록 머리의 주문 id 목록만 읽습니다.
+    * 위치는 블록마다 HEADER_BYTES 이상 앞으로만 움직이므로 깨진 길이 값으로 같은 자리를 맴돌지 않습니다.
+    * */
+    private long scanSegment(FileChannel reader, int segmentNumber) throws IOException {
+        long position = 0;
+        Block block;
+        while ((block = readBlock(reader, position)) != null) {
+            for (long orderId : block.orderIds) {
+                index.put(orderId, ((long) segmentNumber << 40) | position);
+            }
+            position = block.end;
+        }
+        return position;
+    }
+
+    /*
+    * position에서 블록을 읽습니다. 남은 길이가 모자라거나 주문 수, 길이, 주문 id, CRC 중 하나라도 맞지 않으면 null을 반환합니다.
+    * */
+    private static Block readBlock(FileChannel reader, long position) throws IOException {
+        long size = reader.size();
+        if (position + HEADER_BYTES > size) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(reader, header, position);
+        header.flip();
+        int count = header.getInt();
+        int length = header.getInt();
+        int crc = header.getInt();
+        long remaining = size - position - HEADER_BYTES;
+        if (count <= 0 || count > MAX_BLOCK_RECORDS || length < 0 || (long) count * Long.BYTES + length > remaining) {
+            return null;
+        }
+        ByteBuffer body = ByteBuffer.allocate(count * Long.BYTES + length);
+        readFully(reader, body, position + HEADER_BYTES);
+        body.flip();
+        long[] orderIds = new long[count];
+        for (int i = 0; i < count; i++) {
+            orderIds[i] = body.getLong();
+            if (orderIds[i] <= 0) {
+                return null;
+            }
+        }
+        byte[] compressed = new byte[length];
+        body.get(compressed);
+        if (checksum(orderIds, compressed) != crc) {
+            return null;
+        }
+        return new Block(orderIds, compressed, position + HEADER_BYTES + (long) count * Long.BYTES + length);
+    }
+
+    private static int checksum(long[] orderIds, byte[] compressed) {
+        ByteBuffer prefix = ByteBuffer.allocate(Integer.BYTES * 2 + Long.BYTES * orderIds.length)
+                .putInt(orderIds.length).putInt(compressed.length);
+        for (long orderId : orderIds) {
+            prefix.putLong(orderId);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(prefix.array());
+        crc.update(compressed);
+        return (int) crc.getValue();
+    }
+
+    private static void truncateTo(Path path, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    private FileChannel openSegment(int segment) throws IOException {
+        return FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("segment-%05d.arc", segment));
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("unexpected end of archive segment");
+            }
+        }
+    }
+
+    private static byte[] encode(Order order) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(order.getId());
+            out.writeLong(order.getMember().getId());
+            out.writeUTF(order.getOrderDate().toString());
+            out.writeUTF(order.getOrderStatus().name());
+            out.writeUTF(order.getDelivery().getDeliveryStatus().name());
+            out.writeLong(order.getTotalPrice());
+            out.writeInt(order.getOrderItemList().size());
+            for (OrderItem orderItem : order.getOrderItemList()) {
+                out.writeLong(orderItem.getItem().getId());
+                out.writeLong(orderItem.getPrice().getAmount());
+                out.writeInt(orderItem.getCount());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ArchivedOrder decode(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            long orderId = in.readLong();
+            long memberId = in.readLong();
+            LocalDateTime orderDate = LocalDateTime.parse(in.readUTF());
+            OrderStatus orderStatus = OrderStatus.valueOf(in.readUTF());
+            Delivery.DeliveryStatus deliveryStatus = Delivery.DeliveryStatus.valueOf(in.readUTF());
+            long totalPrice = in.readLong();
+            int lineCount = in.readInt();
+            List<Line> lines = new ArrayList<>(lineCount);
+            for (int i = 0; i < lineCount; i++) {
+                lines.add(new Line(in.readLong(), in.readLong(), in.readInt()));
+            }
+            return new ArchivedOrder(orderId, memberId, orderDate, orderStatus, deliveryStatus, totalPrice, lines);
+        }
+    }
+
+    private static byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+            byte[] buffer = new byte[512];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(byte[] data) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[512];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("corrupted archive block");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("corrupted archive block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/*
+* OrderArchiveJob은 보관 기간(retention)이 지난 닫힌 주문을 OrderArchive로 옮기고 운영 테이블에서 지우는 배치 작업입니다.
+* 주문을 id 순서로 chunkSize개씩 읽어, 묶음마다 보관 저장소에 기록(force)한 뒤 같은 트랜잭션에서 주문을 삭제하고 커밋합니다.
+* 주문 상품, 배송, 주문 요약, 아웃박스 이벤트는 Order의 cascade로 함께 지워집니다.
+* 보관 뒤 삭제 전에 중단되어도 다음 실행에서 이미 보관된 주문을 다시 골라 삭제하므로 주문을 잃거나 두 번 보관하지 않습니다.
+* 아직 발행되지 않은 아웃박스 이벤트가 있는 주문은 이벤트가 사라지지 않도록 다음 실행으로 미룹니다.
+* */
+public class OrderArchiveJob {
+
+    private final EntityManagerFactory emf;
+    private final OrderArchive archive;
+    private final int chunkSize;
+
+    public OrderArchiveJob(EntityManagerFactory emf, OrderArchive archive, int chunkSize) {
+        this.emf = emf;
+        this.archive = archive;
+        this.chunkSize = chunkSize;
+    }
+
+    /*
+    * 주문일이 지금부터 retention보다 오래된 닫힌 주문을 옮기고, 옮긴 주문 수를 반환합니다.
+    * */
+    public int run(Duration retention) {
+        return run(LocalDateTime.now().minus(retention));
+    }
+
+    /*
+    * 주문일이 cutoff보다 앞선 닫힌 주문(취소되었거나 배송이 완료된 주문)을 옮깁니다.
+    * */
+    public int run(LocalDateTime cutoff) {
+        int moved = 0;
+        long lastId = 0;
+        while (true) {
+            long afterId = lastId;
+            long[] result = inTransaction(em -> {
+                List<Order> orders = em.createQuery("select o from Order o join fetch o.member join fetch o.delivery d"
+                                + " where o.id > :afterId and o.orderDate < :cutoff"
+                                + " and (o.orderStatus = :canceled or d.deliveryStatus = :done)"
+                                + " and not exists (select e.id from OrderEvent e where e.order = o and e.publishedAt is null)"
+                                + " order by o.id", Order.class)
+                        .setParameter("afterId", afterId)
+                        .setParameter("cutoff", cutoff)
+                        .setParameter("canceled", OrderStatus.CANCELED)
+                        .setParameter("done", Delivery.DeliveryStatus.DONE)
+                        .setMaxResults(chunkSize)
+                        .getResultList();
+                if (orders.isEmpty()) {
+                    return null;
+                }
+                Set<Long> archived;
+                try {
+                    archived = new HashSet<>(archive.archive(orders));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                for (Order order : orders) {
+                    if (archived.contains(order.getId())) {
+                        em.remove(order);
+                    }
+                }
+                return new long[]{archived.size(), orders.get(orders.size() - 1).getId()};
+            });
+            if (result == null) {
+                return moved;
+            }
+            moved += (int) result[0];
+            lastId = result[1];
+        }
+    }
+
+    private <T> T inTransaction(Function<EntityManager, T> work) {
+        EntityManager em = emf.createEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            T result = work.apply(em);
+            tx.commit();
+            return result;
+        } catch (RuntimeException e) {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/*
+* OrderBatch는 (회원, 상품, 수량) 묶음을 대량으로 받아 주문을 한꺼번에 만들고 저장하는 일괄 주문 접수 클래스입니다.
+* 같은 회원의 줄은 하나의 주문으로, 같은 회원이 같은 상품을 여러 번 담은 줄은 하나의 주문 상품으로 합칩니다.
+* Order, OrderItem, Delivery는 @ShardedId(샤딩을 끄면 pooled 시퀀스)로 insert 전에 id를 받으므로 insert를 JDBC 배치로 묶을 수 있습니다.
+* 샤딩을 켠 경우에는 재고와 회원은 참조 DataSource에서 바꾸고, 주문은 회원의 샤드별로 나누어 샤드마다 저장합니다.
+* 주문이 여러 종류의 엔티티(Order, OrderItem, Delivery, OrderSummary, OrderEvent)로 저장되므로
+* 같은 종류의 insert끼리 묶이려면 hibernate.order_inserts=true 설정이 필요하며, persist는 이 설정이 없으면 시작하지 않습니다.
+* */
+public class OrderBatch {
+
+    private static final String ORDER_INSERTS = "hibernate.order_inserts";
+
+    /*
+    * 일괄 접수의 한 줄을 나타냅니다.
+    * */
+    public static class Line {
+        private final Member member;
+        private final Item item;
+        private final int count;
+
+        public Line(Member member, Item item, int count) {
+            this.member = member;
+            this.item = item;
+            this.count = count;
+        }
+
+        public Member getMember() {
+            return member;
+        }
+
+        public Item getItem() {
+            return item;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    private final Map<Member, Map<Item, Integer>> linesByMember = new LinkedHashMap<>();
+
+    /*
+    * 줄을 추가합니다. 입력 순서를 유지하기 위해 LinkedHashMap으로 회원별, 상품별로 묶고 수량을 합산합니다.
+    * */
+    public OrderBatch add(Line line) {
+        linesByMember.computeIfAbsent(line.getMember(), member -> new LinkedHashMap<>())
+                .merge(line.getItem(), line.getCount(), Integer::sum);
+        return this;
+    }
+
+    public OrderBatch addAll(List<Line> lines) {
+        for (Line line : lines) {
+            add(line);
+        }
+        return this;
+    }
+
+    /*
+    * 묶인 줄들로 회원마다 주문 하나씩을 생성하여 저장하고, 저장한 주문 수를 반환합니다.
+    * chunkSize개 주문마다 flush로 배치 insert를 보내고 clear로 영속성 컨텍스트를 비우므로, 주문이 많아도 한 묶음만 메모리에 남습니다.
+    * clear 뒤에는 앞 묶음의 회원과 상품이 준영속 상태가 되므로, 회원과 상품은 주문마다 id로 다시 찾아 재고 감소와 주문 수 증가가 저장되게 합니다.
+    * 재고 차감은 OrderItem.createOrderItem을 그대로 거치므로 재고가 부족하면 IllegalStateException이 발생합니다.
+    * 하나의 트랜잭션 안에서 호출해야 합니다.
+    * */
+    public int persist(EntityManager em, int chunkSize) {
+        enableBatching(em, chunkSize);
+
+        int persisted = 0;
+        for (Map.Entry<Member, Map<Item, Integer>> entry : linesByMember.entrySet()) {
+            em.persist(createOrder(em, entry.getKey(), entry.getValue()));
+            if (++persisted % chunkSize == 0) {
+                em.flush();
+                em.clear();
+            }
+        }
+        em.flush();
+        em.clear();
+        return persisted;
+    }
+
+    /*
+    * 샤딩을 켠 경우의 일괄 접수입니다. 회원, 상품은 참조 DataSource에, 주문 데이터는 회원의 샤드에 있으므로 나누어 저장합니다.
+    * referenceEm은 샤드 번호 없이 시작한 트랜잭션의 EntityManager이며, 여기서 회원과 상품을 찾아 재고를 줄이고 주문 수를 늘리며 주문을 만듭니다.
+    * chunkSize개 주문마다 참조 쪽 변경을 flush한 뒤, 만든 주문을 회원의 샤드별로 나누어 샤드마다 shardWriter를 한 번씩 호출합니다.
+    * shardWriter는 ShardRoutingDataSource.callOnShard(shard, ...) 안에서 새 트랜잭션을 열고 persistOrders로 주문을 저장합니다.
+    * 주문은 referenceEm에서 읽은 회원과 상품을 id로만 참조하므로 샤드 트랜잭션은 주문 데이터만 씁니다.
+    * 샤드 저장이 실패하면 예외가 전파되어 referenceEm의 트랜잭션(재고, 주문 수)은 롤백되지만, 앞서 커밋된 샤드의 주문은 남습니다.
+    * 샤드와 참조 DataSource를 묶는 분산 트랜잭션은 쓰지 않습니다.
+    * */
+    public int persist(EntityManager referenceEm, OrderShardRouter<?> router,
+                       BiConsumer<Integer, List<Order>> shardWriter, int chunkSize) {
+        int persisted = 0;
+        List<Order> chunk = new ArrayList<>(chunkSize);
+        for (Map.Entry<Member, Map<Item, Integer>> entry : linesByMember.entrySet()) {
+            chunk.add(createOrder(referenceEm, entry.getKey(), entry.getValue()));
+            if (chunk.size() == chunkSize) {
+                persisted += writeChunk(referenceEm, router, shardWriter, chunk);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            persisted += writeChunk(referenceEm, router, shardWriter, chunk);
+        }
+        return persisted;
+    }
+
+    /*
+    * 샤드 트랜잭션에서 한 샤드의 주문들을 배치 insert로 저장합니다. persist(referenceEm, router, shardWriter, chunkSize)의 shardWriter에서 호출합니다.
+    * 배송지 주소 행은 참조 DataSource에서 정해졌으므로, 샤드에서 배송과 함께 읽을 수 있도록 같은 id로 이 샤드에도 둡니다.
+    * */
+    public static void persistOrders(EntityManager em, List<Order> orders) {
+        enableBatching(em, orders.size());
+        AddressBook addressBook = new AddressBook(em);
+        for (Order order : orders) {
+            AddressRecord addressRecord = order.getDelivery().getAddressRecord();
+            if (addressRecord != null) {
+                addressBook.replicate(addressRecord);
+            }
+            em.persist(order);
+        }
+        em.flush();
+        em.clear();
+    }
+
+    private static int writeChunk(EntityManager referenceEm, OrderShardRouter<?> router,
+                                  BiConsumer<Integer, List<Order>> shardWriter, List<Order> chunk) {
+        referenceEm.flush();
+        router.groupByShard(chunk, Order::getMember).forEach(shardWriter);
+        referenceEm.clear();
+        return chunk.size();
+    }
+
+    /*
+    * 회원과 상품을 id로 다시 찾아 주문을 만듭니다. 재고 차감은 OrderItem.createOrderItem을 그대로 거칩니다.
+    * */
+    private static Order createOrder(EntityManager em, Member line, Map<Item, Integer> counts) {
+        Member member = em.find(Member.class, line.getId());
+        OrderItem[] orderItems = new OrderItem[counts.size()];
+        int i = 0;
+        for (Map.Entry<Item, Integer> count : counts.entrySet()) {
+            Item item = em.find(Item.class, count.getKey().getId());
+            orderItems[i++] = OrderItem.createOrderItem(item, item.getPrice(), count.getValue());
+        }
+        return Order.createOrder(member, orderItems);
+    }
+
+    private static void enableBatching(EntityManager em, int batchSize) {
+        Object orderInserts = em.getEntityManagerFactory().getProperties().get(ORDER_INSERTS);
+        if (!"true".equalsIgnoreCase(String.valueOf(orderInserts))) {
+            throw new IllegalStateException(ORDER_INSERTS + "=true is required for batched order inserts");
+        }
+        em.unwrap(Session.class).setJdbcBatchSize(batchSize);
+    }
+}
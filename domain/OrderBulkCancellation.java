@@ -0,0 +1,216 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.TypedQuery;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+* OrderBulkCancellation은 조건(기간, 회원, 상품)에 맞는 주문을 한꺼번에 취소하는 일괄 취소 명령입니다.
+* Order.cancel을 주문마다 반복하면 주문 상품마다 Item.addStock이 한 행씩 갱신되지만,
+* 여기서는 주문 상태를 IN 절 묶음(batch) 단위의 update 문으로 바꾸고, 돌려놓을 재고는 상품별로 합산하여 상품마다 update 한 번으로 복구합니다.
+* Order.cancel과 같이 배송이 완료(DONE)된 주문은 취소하지 않습니다.
+* 후보를 고른 뒤 다른 트랜잭션이 같은 주문을 취소하거나 배송을 완료할 수 있으므로, 묶음마다 주문과 배송 행을 select ... for update로 잠그면서
+* 상태 조건을 다시 확인하고, 잠근 주문만 취소하고 그 주문의 재고만 복구합니다.
+* 배송 상태를 StatusJournal로 미뤄 반영하는 경우, 테이블의 배송 상태가 아직 이전 값일 수 있으므로 반영 대기 중인 배송의 주문은 취소하지 않습니다.
+* 하나의 트랜잭션 안에서 호출해야 하며, bulk update는 영속성 컨텍스트를 거치지 않으므로 끝난 뒤 컨텍스트를 비웁니다.
+* 상품 행은 id 순서로 갱신하여, 같은 상품들을 복구하는 다른 일괄 취소와 서로 잠금을 기다리는 교착 상태(deadlock)가 생기지 않게 합니다.
+* bulk update는 @PostUpdate를 거치지 않으므로, 커밋 뒤에 복구한 상품의 재고 캐시(ItemCatalogCache)를 무효화하고 StockLedger에 복구한 수량을 알립니다.
+* */
+public class OrderBulkCancellation {
+
+    /*
+    * 취소할 주문의 조건입니다. null인 조건은 적용하지 않습니다.
+    * */
+    public static class Criteria {
+        private LocalDateTime from;
+        private LocalDateTime to;
+        private Long memberId;
+        private Long itemId;
+
+        public Criteria orderedBetween(LocalDateTime from, LocalDateTime to) {
+            this.from = from;
+            this.to = to;
+            return this;
+        }
+
+        public Criteria member(Long memberId) {
+            this.memberId = memberId;
+            return this;
+        }
+
+        public Criteria item(Long itemId) {
+            this.itemId = itemId;
+            return this;
+        }
+    }
+
+    private final EntityManager em;
+    private final int batchSize;
+    private final StatusJournal statusJournal;
+    private final StockLedger stockLedger;
+
+    public OrderBulkCancellation(EntityManager em, int batchSize) {
+        this(em, batchSize, null, null);
+    }
+
+    public OrderBulkCancellation(EntityManager em, int batchSize, StatusJournal statusJournal) {
+        this(em, batchSize, statusJournal, null);
+    }
+
+    /*
+    * statusJournal에서 반영을 기다리는 배송의 주문은 건너뜁니다. stockLedger가 있으면 복구한 재고를 커밋 뒤에 알립니다.
+    * */
+    public OrderBulkCancellation(EntityManager em, int batchSize, StatusJournal statusJournal, StockLedger stockLedger) {
+        this.em = em;
+        this.batchSize = batchSize;
+        this.statusJournal = statusJournal;
+        this.stockLedger = stockLedger;
+    }
+
+    /*
+    * 조건에 맞는 주문을 취소하고 실제로 취소한 주문 수를 반환합니다.
+    * */
+    public int cancel(Criteria criteria) {
+        List<Long> orderIds = findCancellable(criteria);
+        Map<Long, Long> restoreByItem = new TreeMap<>();
+        int canceled = 0;
+        for (int from = 0; from < orderIds.size(); from += batchSize) {
+            List<Long> batch = lockCancellable(orderIds.subList(from, Math.min(from + batchSize, orderIds.size())));
+            if (batch.isEmpty()) {
+                continue;
+            }
+            List<Object[]> rows = em.createQuery(
+                            "select oi.order.id, oi.item.id, sum(oi.count) from OrderItem oi"
+                                    + " where oi.order.id in :orderIds group by oi.order.id, oi.item.id", Object[].class)
+                    .setParameter("orderIds", batch)
+                    .getResultList();
+            canceled += em.createQuery("update Order o set o.orderStatus = :canceled, o.version = o.version + 1"
+                            + " where o.id in :orderIds and o.orderStatus = :ordered")
+                    .setParameter("canceled", OrderStatus.CANCELED)
+                    .setParameter("ordered", OrderStatus.ORDERED)
+                    .setParameter("orderIds", batch)
+                    .executeUpdate();
+            em.createQuery("update OrderSummary s set s.orderStatus = :canceled where s.orderId in :orderIds")
+                    .setParameter("canceled", OrderStatus.CANCELED)
+                    .setParameter("orderIds", batch)
+                    .executeUpdate();
+            for (Long orderId : batch) {
+                em.persist(OrderEvent.orderCancelled(em.getReference(Order.class, orderId)));
+            }
+            for (Object[] row : rows) {
+                Long itemId = (Long) row[1];
+                int quantity = ((Number) row[2]).intValue();
+                restoreByItem.merge(itemId, (long) quantity, Long::sum);
+                em.persist(OrderEvent.stockChanged(em.getReference(Order.class, (Long) row[0]),
+                        em.getReference(Item.class, itemId), quantity));
+            }
+        }
+        for (Map.Entry<Long, Long> entry : restoreByItem.entrySet()) {
+            int quantity = Math.toIntExact(entry.getValue());
+            em.createQuery("update Item i set i.stock = i.stock + :quantity, i.version = i.version + 1"
+                            + " where i.id = :itemId")
+                    .setParameter("quantity", quantity)
+                    .setParameter("itemId", entry.getKey())
+                    .executeUpdate();
+        }
+        em.flush();
+        em.clear();
+        afterCommit(() -> stockRestored(restoreByItem));
+        return canceled;
+    }
+
+    private void stockRestored(Map<Long, Long> restoreByItem) {
+        for (Map.Entry<Long, Long> entry : restoreByItem.entrySet()) {
+            ItemCatalogCache.stockChanged(entry.getKey());
+            if (stockLedger != null) {
+                stockLedger.recordExternalChange(entry.getKey(), Math.toIntExact(entry.getValue()));
+            }
+        }
+    }
+
+    /*
+    * 스프링 트랜잭션 안이면 커밋된 뒤에 실행하고, 롤백되면 실행하지 않습니다.
+    * 트랜잭션 동기화가 없으면(EntityTransaction을 직접 다루는 경우) 바로 실행합니다.
+    * 그 뒤 롤백되어 원장의 수량이 실제보다 많아져도 다음 StockLedger.flush가 엔티티의 재고로 다시 맞춥니다.
+    * */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /*
+    * 후보 주문 중 아직 취소할 수 있는 주문의 행과 배송 행을 트랜잭션이 끝날 때까지 잠그고 그 id를 반환합니다.
+    * 후보를 고른 뒤 다른 트랜잭션이 취소했거나 배송을 완료한 주문은 빠지므로, 재고는 여기서 반환한 주문에 대해서만 복구합니다.
+    * 잠근 뒤 StatusJournal에 반영 대기 중인 배송 상태가 있는 주문도 뺍니다.
+    * */
+    private List<Long> lockCancellable(List<Long> candidateIds) {
+        List<Object[]> rows = em.createQuery("select o.id, d.id from Order o join o.delivery d"
+                        + " where o.id in :orderIds and o.orderStatus = :ordered and d.deliveryStatus <> :done"
+                        + " order by o.id", Object[].class)
+                .setParameter("orderIds", candidateIds)
+                .setParameter("ordered", OrderStatus.ORDERED)
+                .setParameter("done", Delivery.DeliveryStatus.DONE)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList();
+        List<Long> orderIds = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            if (statusJournal == null || !statusJournal.isPending(StatusJournal.Target.DELIVERY, (Long) row[1])) {
+                orderIds.add((Long) row[0]);
+            }
+        }
+        return orderIds;
+    }
+
+    /*
+    * 아직 취소되지 않았고 배송이 완료되지 않은 주문 중 조건에 맞는 주문의 id를 찾습니다.
+    * */
+    private List<Long> findCancellable(Criteria criteria) {
+        StringBuilder jpql = new StringBuilder("select o.id from Order o join o.delivery d"
+                + " where o.orderStatus = :ordered and d.deliveryStatus <> :done");
+        if (criteria.from != null) {
+            jpql.append(" and o.orderDate >= :from");
+        }
+        if (criteria.to != null) {
+            jpql.append(" and o.orderDate < :to");
+        }
+        if (criteria.memberId != null) {
+            jpql.append(" and o.member.id = :memberId");
+        }
+        if (criteria.itemId != null) {
+            jpql.append(" and exists (select oi.id from OrderItem oi where oi.order = o and oi.item.id = :itemId)");
+        }
+        jpql.append(" order by o.id");
+        TypedQuery<Long> query = em.createQuery(jpql.toString(), Long.class)
+                .setParameter("ordered", OrderStatus.ORDERED)
+                .setParameter("done", Delivery.DeliveryStatus.DONE);
+        if (criteria.from != null) {
+            query.setParameter("from", criteria.from);
+        }
+        if (criteria.to != null) {
+            query.setParameter("to", criteria.to);
+        }
+        if (criteria.memberId != null) {
+            query.setParameter("memberId", criteria.memberId);
+        }
+        if (criteria.itemId != null) {
+            query.setParameter("itemId", criteria.itemId);
+        }
+        return query.getResultList();
+    }
+}
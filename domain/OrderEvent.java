@@ -0,0 +1,80 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+import static jakarta.persistence.EnumType.STRING;
+import static jakarta.persistence.FetchType.LAZY;
+import static lombok.AccessLevel.PROTECTED;
+
+/*
+* OrderEvent는 주문의 생성, 취소와 그에 따른 재고 변경을 기록하는 아웃박스(outbox) 엔티티입니다.
+* Order에 cascade로 묶여 있어 주문 변경과 같은 트랜잭션에서 저장되며,
+* OrderEventRelay가 아직 발행되지 않은 이벤트를 묶음으로 읽어 구독자에게 전달합니다.
+* 창고, 정산 시스템은 orders 테이블을 주기적으로 조회하는 대신 이 이벤트를 받아 처리합니다.
+* */
+@Entity
+@Table(name = "order_outbox", indexes = @Index(name = "idx_order_outbox_published", columnList = "published_at, id"))
+@NamedQuery(name = "OrderEvent.findUnpublished",
+        query = "select e from OrderEvent e where e.publishedAt is null order by e.id")
+@Getter
+@NoArgsConstructor(access = PROTECTED)
+public class OrderEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_outbox_seq")
+    @SequenceGenerator(name = "order_outbox_seq", sequenceName = "order_outbox_seq", allocationSize = 100)
+    private Long id;
+
+    @ManyToOne(fetch = LAZY)
+    @JoinColumn(name = "order_id")
+    private Order order;
+
+    @Enumerated(STRING)
+    private EventType eventType;
+
+    /*
+    * STOCK_CHANGED 이벤트에서만 사용됩니다. itemId 상품의 재고가 quantity만큼 바뀌었음을 나타냅니다. (감소는 음수)
+    * */
+    private Long itemId;
+    private int quantity;
+
+    private LocalDateTime createdAt;
+
+    /*
+    * 구독자에게 전달된 시각입니다. null이면 아직 발행되지 않은 이벤트입니다.
+    * */
+    private LocalDateTime publishedAt;
+
+    static OrderEvent orderCreated(Order order) {
+        return create(order, EventType.ORDER_CREATED, null, 0);
+    }
+
+    static OrderEvent orderCancelled(Order order) {
+        return create(order, EventType.ORDER_CANCELLED, null, 0);
+    }
+
+    static OrderEvent stockChanged(Order order, Item item, int quantity) {
+        return create(order, EventType.STOCK_CHANGED, item.getId(), quantity);
+    }
+
+    private static OrderEvent create(Order order, EventType eventType, Long itemId, int quantity) {
+        OrderEvent orderEvent = new OrderEvent();
+        orderEvent.order = order;
+        orderEvent.eventType = eventType;
+        orderEvent.itemId = itemId;
+        orderEvent.quantity = quantity;
+        orderEvent.createdAt = LocalDateTime.now();
+        return orderEvent;
+    }
+
+    void markPublished() {
+        this.publishedAt = LocalDateTime.now();
+    }
+
+    public enum EventType {
+        ORDER_CREATED, ORDER_CANCELLED, STOCK_CHANGED
+    }
+}
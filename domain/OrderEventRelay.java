@@ -0,0 +1,44 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.EntityManager;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/*
+* OrderEventRelay는 아웃박스(order_outbox)에 쌓인 미발행 이벤트를 묶음으로 읽어 구독자에게 전달하는 중계기입니다.
+* 구독자 목록이 그대로 메모리 내 브로커 역할을 하므로, 테스트에서는 외부 메시지 브로커 없이 구독자를 등록해 이벤트를 받을 수 있습니다.
+* relay는 호출하는 쪽의 트랜잭션 안에서 실행되어야 하며, 구독자가 예외를 던지면 해당 묶음은 발행 처리되지 않고 다음 호출에 다시 전달됩니다.
+* */
+public class OrderEventRelay {
+
+    private final EntityManager em;
+    private final List<Consumer<OrderEvent>> subscribers = new CopyOnWriteArrayList<>();
+
+    public OrderEventRelay(EntityManager em) {
+        this.em = em;
+    }
+
+    public void subscribe(Consumer<OrderEvent> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /*
+    * 미발행 이벤트를 id 순서대로 최대 batchSize개 전달하고, 전달한 이벤트 수를 반환합니다.
+    * */
+    public int relay(int batchSize) {
+        List<OrderEvent> events = em.createNamedQuery("OrderEvent.findUnpublished", OrderEvent.class)
+                .setMaxResults(batchSize)
+                .getResultList();
+        for (OrderEvent event : events) {
+            for (Consumer<OrderEvent> subscriber : subscribers) {
+                subscriber.accept(event);
+            }
+        }
+        for (OrderEvent event : events) {
+            event.markPublished();
+        }
+        return events.size();
+    }
+}
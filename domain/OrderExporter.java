@@ -0,0 +1,140 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.EntityManager;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/*
+* OrderExporter는 정산용으로 모든 주문을 주문 상품 단위의 한 줄씩 파일로 내보내는 스트리밍 내보내기 클래스입니다.
+* 주문을 id 순서의 키셋(id > 마지막 id)으로 pageSize개씩 읽고, 한 페이지를 쓴 뒤에는 영속성 컨텍스트를 비워(clear)
+* 주문 수가 수백만 건이 되어도 메모리 사용량이 한 페이지 크기로 일정하게 유지됩니다.
+* 주문 상품은 Order.orderItemList의 @BatchSize로 페이지 단위 IN 쿼리로 읽힙니다.
+* */
+public class OrderExporter {
+
+    /*
+    * CSV: 헤더가 있는 쉼표 구분 파일, JSON_LINES: 한 줄에 JSON 객체 하나
+    * */
+    public enum Format {
+        CSV, JSON_LINES
+    }
+
+    private static final String CSV_HEADER = "order_id,order_date,member_id,order_status,delivery_status,city,item_id,price,count";
+
+    private final EntityManager em;
+    private final int pageSize;
+
+    public OrderExporter(EntityManager em, int pageSize) {
+        this.em = em;
+        this.pageSize = pageSize;
+    }
+
+    /*
+    * 모든 주문을 path에 내보내고 내보낸 주문 수를 반환합니다.
+    * 읽기 전용 트랜잭션 안에서 호출해야 하며, 호출하는 동안 같은 EntityManager로 읽은 엔티티는 모두 준영속 상태가 됩니다.
+    * */
+    public long export(Path path, Format format) throws IOException {
+        long exported = 0;
+        long lastId = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            if (format == Format.CSV) {
+                writer.write(CSV_HEADER);
+                writer.newLine();
+            }
+            while (true) {
+                List<Order> page = em.createQuery(
+                                "select o from Order o join fetch o.member join fetch o.delivery d"
+                                        + " left join fetch d.addressRecord"
+                                        + " where o.id > :lastId order by o.id", Order.class)
+                        .setParameter("lastId", lastId)
+                        .setMaxResults(pageSize)
+                        .getResultList();
+                if (page.isEmpty()) {
+                    break;
+                }
+                for (Order order : page) {
+                    for (OrderItem orderItem : order.getOrderItemList()) {
+                        if (format == Format.CSV) {
+                            writeCsv(writer, order, orderItem);
+                        } else {
+                            writeJson(writer, order, orderItem);
+                        }
+                        writer.newLine();
+                    }
+                }
+                exported += page.size();
+                lastId = page.get(page.size() - 1).getId();
+                em.clear();
+            }
+        }
+        return exported;
+    }
+
+    private void writeCsv(BufferedWriter writer, Order order, OrderItem orderItem) throws IOException {
+        writer.write(Long.toString(order.getId()));
+        writer.write(',');
+        writer.write(String.valueOf(order.getOrderDate()));
+        writer.write(',');
+        writer.write(String.valueOf(order.getMember().getId()));
+        writer.write(',');
+        writer.write(String.valueOf(order.getOrderStatus()));
+        writer.write(',');
+        writer.write(String.valueOf(order.getDelivery().getDeliveryStatus()));
+        writer.write(',');
+        writer.write(csv(order.getDelivery().getCity()));
+        writer.write(',');
+        writer.write(String.valueOf(orderItem.getItem().getId()));
+        writer.write(',');
+        writer.write(Long.toString(orderItem.getPrice().getAmount()));
+        writer.write(',');
+        writer.write(String.valueOf(orderItem.getCount()));
+    }
+
+    private void writeJson(BufferedWriter writer, Order order, OrderItem orderItem) throws IOException {
+        writer.write("{\"orderId\":" + order.getId()
+                + ",\"orderDate\":" + json(String.valueOf(order.getOrderDate()))
+                + ",\"memberId\":" + order.getMember().getId()
+                + ",\"orderStatus\":" + json(String.valueOf(order.getOrderStatus()))
+                + ",\"deliveryStatus\":" + json(String.valueOf(order.getDelivery().getDeliveryStatus()))
+                + ",\"city\":" + json(order.getDelivery().getCity())
+                + ",\"itemId\":" + orderItem.getItem().getId()
+                + ",\"price\":" + orderItem.getPrice().getAmount()
+                + ",\"count\":" + orderItem.getCount() + "}");
+    }
+
+    /*
+    * 쉼표, 따옴표, 줄바꿈이 들어 있는 값은 큰따옴표로 감싸고 안의 큰따옴표는 두 번 씁니다.
+    * */
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String json(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
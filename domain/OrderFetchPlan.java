@@ -0,0 +1,50 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.EntityManager;
+
+import java.util.List;
+import java.util.Map;
+
+/*
+* OrderFetchPlan은 Order 애그리거트를 읽어 올 모양을 고르는 열거형입니다.
+* 각 값은 Order에 선언된 @NamedEntityGraph 이름과 연결되어 있으며, fetchgraph 힌트로 넘기면
+* 그래프에 포함된 연관관계는 조인으로 함께 읽고 나머지는 지연 로딩으로 남겨 둡니다.
+* SUMMARY: 회원까지
+* WITH_DELIVERY: 회원과 배송까지
+* FULL: 회원, 배송, 주문 상품과 상품의 카탈로그 정보까지
+* */
+public enum OrderFetchPlan {
+    SUMMARY("Order.summary"),
+    WITH_DELIVERY("Order.withDelivery"),
+    FULL("Order.full");
+
+    private static final String FETCH_GRAPH = "jakarta.persistence.fetchgraph";
+
+    private final String graphName;
+
+    OrderFetchPlan(String graphName) {
+        this.graphName = graphName;
+    }
+
+    public String getGraphName() {
+        return graphName;
+    }
+
+    /*
+    * 주문 하나를 이 fetch plan으로 읽어 옵니다.
+    * */
+    public Order find(EntityManager em, Long orderId) {
+        return em.find(Order.class, orderId, Map.of(FETCH_GRAPH, em.getEntityGraph(graphName)));
+    }
+
+    /*
+    * 여러 주문을 이 fetch plan으로 한 번에 읽어 옵니다.
+    * FULL에서는 주문 상품 조인으로 행이 늘어나므로 distinct로 주문을 한 번씩만 반환합니다.
+    * */
+    public List<Order> findAll(EntityManager em, List<Long> orderIds) {
+        return em.createQuery("select distinct o from Order o where o.id in :orderIds", Order.class)
+                .setParameter("orderIds", orderIds)
+                .setHint(FETCH_GRAPH, em.getEntityGraph(graphName))
+                .getResultList();
+    }
+}
@@ -18,7 +18,7 @@ import static lombok.AccessLevel.PROTECTED;
     @Getter
     public class OrderItem {
         @Id
-        @GeneratedValue
+        @ShardedId(sequenceName = "order_item_seq")
         private Long id;
 
         /*
@@ -36,17 +36,17 @@ import static lombok.AccessLevel.PROTECTED;
         private Item item;
 
         /*
-        * private Integer price: 주문 상품의 가격을 나타내는 필드입니다.
-        * private Integer count: 주문 상품의 수량을 나타내는 필드입니다.
+        * private Money price: 주문 상품의 가격을 나타내는 필드입니다. MoneyConverter로 숫자 컬럼에 저장됩니다.
+        * private int count: 주문 상품의 수량을 나타내는 필드입니다.
         * */
-        private Integer price;
-        private Integer count;
+        private Money price;
+        private int count;
 
         /**
          * 스태틱 팩토리 메서드
          */
         /*OrderItem 클래스에 대한 정적 메서드 createOrderItem을 나타냅니다. 이 메서드는 주문 상품을 생성하는 역할을 합니다. */
-        public static OrderItem createOrderItem(Item item, int orderPrice, int orderCount) {
+        public static OrderItem createOrderItem(Item item, Money orderPrice, int orderCount) {
             /*OrderItem orderItem = new OrderItem();: 새로운 OrderItem 객체를 생성합니다.*/
             OrderItem orderItem = new OrderItem();
             /*orderItem.setItem(item);: 주문 상품의 상품 객체를 설정합니다. item 매개변수로 전달받은 상품을 orderItem 객체에 설정합니다.*/
@@ -62,33 +62,47 @@ import static lombok.AccessLevel.PROTECTED;
             return orderItem;
         }
 
+        /*
+        * createReservedOrderItem은 이미 StockLedger로 재고를 예약해 둔 경우에 주문 상품을 생성하는 정적 메서드입니다.
+        * 예약한 수량은 StockLedger.flush로 Item에 반영되므로 여기서는 item.removeStock을 호출하지 않습니다.
+        * */
+        public static OrderItem createReservedOrderItem(Item item, Money orderPrice, int orderCount) {
+            OrderItem orderItem = new OrderItem();
+            orderItem.setItem(item);
+            orderItem.price = orderPrice;
+            orderItem.count = orderCount;
+            return orderItem;
+        }
+
         /*
         * public void setOrder(Order order): 주문 객체를 설정하는 메서드입니다.
-        * order 매개변수로 전달받은 주문 객체를 현재 OrderItem 객체에 설정하고, 해당 주문 객체의 getOrderItemList() 메서드를 통해 현재 주문 상품을 주문 목록에 추가합니다.
+        * order 매개변수로 전달받은 주문 객체를 현재 OrderItem 객체에 설정하고, 해당 주문 객체의 addOrderItem() 메서드를 통해 현재 주문 상품을 주문 목록에 추가하고 총 가격에 더합니다.
         * */
         public void setOrder(Order order) {
             this.order = order;
-            order.getOrderItemList().add(this);
+            order.addOrderItem(this);
         }
 
         /*
         * public void setItem(Item item): 상품 객체를 설정하는 메서드입니다.
-        * item 매개변수로 전달받은 상품 객체를 현재 OrderItem 객체에 설정하고, 해당 상품 객체의 getOrderItem() 메서드를 통해 현재 주문 상품을 상품의 주문 상품 목록에 추가합니다.
+        * item 매개변수로 전달받은 상품 객체를 현재 OrderItem 객체에 설정하고, 상품의 주문 상품 개수를 1 증가시킵니다.
+        * 상품의 주문 상품 컬렉션을 로딩하지 않으므로 많이 팔린 상품도 주문할 때마다 같은 비용이 듭니다.
         * */
         public void setItem(Item item) {
             this.item = item;
-            item.getOrderItem().add(this);
+            item.increaseOrderItemCount();
         }
 
         /**
          * 비즈니스 로직
          */
         /*
-        * public int getTotalPrice(): 주문 상품의 총 가격을 계산하여 반환하는 메서드입니다.
-        * 현재 OrderItem 객체의 가격(getPrice())과 수량(getCount())을 곱하여 총 가격을 계산합니다.
+        * public long getTotalPrice(): 주문 상품의 총 가격을 계산하여 반환하는 메서드입니다.
+        * 현재 OrderItem 객체의 가격(price)의 최소 단위 금액과 수량(count)을 Math.multiplyExact로 곱합니다.
+        * 새 Money 객체를 만들지 않으므로 총액을 자주 계산해도 할당이 없고, long 범위를 넘으면 ArithmeticException이 발생합니다.
         * */
-        public int getTotalPrice() {
-            return this.getPrice() * this.getCount();
+        public long getTotalPrice() {
+            return Math.multiplyExact(price.getAmount(), (long) count);
         }
 
         /*
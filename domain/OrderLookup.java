@@ -0,0 +1,63 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.EntityManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/*
+* OrderLookup은 주문 id로 주문 내역을 찾는 읽기 경로입니다. 운영 테이블을 먼저 찾고, 없으면 OrderArchive에서 찾습니다(read-through).
+* OrderArchiveJob이 오래된 주문을 운영 테이블에서 지운 뒤에도 같은 호출로 주문 내역을 보여줄 수 있도록,
+* 두 저장소의 결과를 모두 OrderArchive.ArchivedOrder 스냅샷으로 반환합니다.
+* 여러 주문을 찾을 때는 운영 테이블을 한 번의 쿼리로 찾고, 남은 주문은 보관 저장소의 블록 인덱스로 블록별로 모아 블록마다 한 번만 압축을 풉니다.
+* */
+public class OrderLookup {
+
+    private final EntityManager em;
+    private final OrderArchive archive;
+
+    public OrderLookup(EntityManager em, OrderArchive archive) {
+        this.em = em;
+        this.archive = archive;
+    }
+
+    public Optional<OrderArchive.ArchivedOrder> find(Long orderId) {
+        Order order = em.find(Order.class, orderId);
+        if (order != null) {
+            return Optional.of(OrderArchive.snapshot(order));
+        }
+        return archive.find(orderId);
+    }
+
+    /*
+    * 주문 id들로 주문 내역을 찾아 요청한 순서대로 반환합니다. 어느 저장소에도 없는 id는 결과에 없습니다.
+    * */
+    public Map<Long, OrderArchive.ArchivedOrder> findAll(List<Long> orderIds) {
+        Map<Long, OrderArchive.ArchivedOrder> live = new LinkedHashMap<>();
+        List<Order> orders = em.createQuery("select o from Order o join fetch o.member join fetch o.delivery"
+                        + " where o.id in :orderIds", Order.class)
+                .setParameter("orderIds", orderIds)
+                .getResultList();
+        for (Order order : orders) {
+            live.put(order.getId(), OrderArchive.snapshot(order));
+        }
+        List<Long> missing = new ArrayList<>();
+        for (Long orderId : orderIds) {
+            if (!live.containsKey(orderId)) {
+                missing.add(orderId);
+            }
+        }
+        Map<Long, OrderArchive.ArchivedOrder> archived = missing.isEmpty() ? Map.of() : archive.findAll(missing);
+        Map<Long, OrderArchive.ArchivedOrder> found = new LinkedHashMap<>();
+        for (Long orderId : orderIds) {
+            OrderArchive.ArchivedOrder order = live.containsKey(orderId) ? live.get(orderId) : archived.get(orderId);
+            if (order != null) {
+                found.put(orderId, order);
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,218 @@
+package likelion.springbootsunny.domain;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+* OrderPlacementPipeline은 장바구니(Cart) 여러 개를 동시에 주문으로 바꾸는 주문 접수 파이프라인입니다.
+* OrderItem.createOrderItem은 줄마다 Item.removeStock을 호출하므로, 줄이 많은 장바구니끼리 같은 상품들을 서로 다른 순서로 잡으면
+* DB 행 락을 엇갈려 기다리다 교착 상태(deadlock)에 빠질 수 있습니다.
+* 이 파이프라인은 장바구니의 줄을 상품 id 순으로 정렬하고 같은 상품의 줄을 하나로 합친 뒤,
+* 그 순서대로 StockLedger에 재고를 예약합니다. 예약은 CAS로 처리되어 락을 잡지 않고, 한 줄이라도 재고가 부족하면
+* 이미 예약한 줄을 모두 되돌리고 장바구니 전체를 포기(abort)합니다.
+* 상품 id와 재고를 읽는 일과 엔티티 생성(Order.createOrder)은 호출한 스레드에서 하고, ForkJoinPool의 작업 스레드는 id와 수량으로 재고 예약만 병렬로 처리합니다.
+* 예약한 재고는 호출하는 쪽의 트랜잭션에서 StockLedger.flush로 Item에 반영합니다.
+* 샤딩을 켠 경우에는 placeByShard로 주문을 샤드별로 나누어 받아 샤드마다 저장합니다.
+* */
+public class OrderPlacementPipeline implements AutoCloseable {
+
+    /*
+    * 한 회원의 장바구니입니다. 같은 상품을 여러 번 담아도 됩니다.
+    * */
+    public static class Cart {
+        private final Member member;
+        private final List<OrderBatch.Line> lines = new ArrayList<>();
+
+        public Cart(Member member) {
+            this.member = member;
+        }
+
+        public Cart add(Item item, int count) {
+            lines.add(new OrderBatch.Line(member, item, count));
+            return this;
+        }
+
+        public Member getMember() {
+            return member;
+        }
+    }
+
+    private final StockLedger stockLedger;
+    private final ForkJoinPool pool;
+
+    private final LongAdder placed = new LongAdder();
+    private final LongAdder aborted = new LongAdder();
+    private final LongAdder elapsedNanos = new LongAdder();
+
+    public OrderPlacementPipeline(StockLedger stockLedger, int parallelism) {
+        this.stockLedger = stockLedger;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /*
+    * 호출한 스레드에서 장바구니를 정리한 예약 계획입니다. 작업 스레드에는 상품 id와 수량만 넘기고 엔티티는 넘기지 않습니다.
+    * */
+    private static final class Plan {
+        private final TreeMap<Long, Integer> counts = new TreeMap<>();
+        private final Map<Long, Item> items = new LinkedHashMap<>();
+    }
+
+    /*
+    * 장바구니들을 주문으로 바꾸고 생성된 주문 목록을 장바구니 순서대로 반환합니다.
+    * 재고가 부족한 장바구니는 주문을 만들지 않고 건너뛰며 포기 횟수에 더합니다.
+    * 예약 작업이나 주문 생성이 실패하거나 기다리는 중에 인터럽트되면 반환되는 주문이 없으므로, 예약에 성공한 장바구니의 재고를 모두 되돌린 뒤 예외를 던집니다.
+    * */
+    public List<Order> place(List<Cart> carts) throws InterruptedException {
+        long start = System.nanoTime();
+        List<Plan> plans = new ArrayList<>(carts.size());
+        for (Cart cart : carts) {
+            plans.add(plan(cart));
+        }
+        List<Future<Boolean>> futures = new ArrayList<>(plans.size());
+        boolean completed = false;
+        try {
+            for (Plan plan : plans) {
+                futures.add(pool.submit(() -> reserve(plan.counts)));
+            }
+            List<Order> orders = new ArrayList<>(carts.size());
+            for (int i = 0; i < carts.size(); i++) {
+                boolean reserved;
+                try {
+                    reserved = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("cart reservation failed", e.getCause());
+                }
+                if (!reserved) {
+                    aborted.increment();
+                    continue;
+                }
+                Plan plan = plans.get(i);
+                OrderItem[] orderItems = new OrderItem[plan.counts.size()];
+                int n = 0;
+                for (Map.Entry<Long, Integer> entry : plan.counts.entrySet()) {
+                    Item item = plan.items.get(entry.getKey());
+                    orderItems[n++] = OrderItem.createReservedOrderItem(item, item.getPrice(), entry.getValue());
+                }
+                orders.add(Order.createOrder(carts.get(i).getMember(), orderItems));
+            }
+            placed.add(orders.size());
+            completed = true;
+            return orders;
+        } finally {
+            if (!completed) {
+                for (int i = 0; i < futures.size(); i++) {
+                    if (awaitReserved(futures.get(i))) {
+                        release(plans.get(i).counts);
+                    }
+                }
+            }
+            elapsedNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /*
+    * 샤딩을 켠 경우 place로 만든 주문을 회원의 샤드별로 나누어 샤드 번호 순서로 반환합니다.
+    * 호출하는 쪽은 샤드마다 ShardRoutingDataSource.callOnShard 안에서 트랜잭션을 열어 OrderBatch.persistOrders로 주문을 저장하고,
+    * 예약한 재고(StockLedger.flush)와 회원의 주문 수는 샤드 번호 없이 연 참조 트랜잭션에서 반영합니다.
+    * */
+    public Map<Integer, List<Order>> placeByShard(List<Cart> carts, OrderShardRouter<?> router) throws InterruptedException {
+        return router.groupByShard(place(carts), Order::getMember);
+    }
+
+    /*
+    * 장바구니의 줄을 상품 id 순으로 합치고, 처음 보는 상품을 StockLedger에 등록합니다.
+    * Item의 id와 재고는 영속성 컨텍스트의 엔티티이므로 호출한 스레드에서만 읽습니다.
+    * */
+    private Plan plan(Cart cart) {
+        Plan plan = new Plan();
+        for (OrderBatch.Line line : cart.lines) {
+            Item item = line.getItem();
+            Long itemId = item.getId();
+            if (plan.items.putIfAbsent(itemId, item) == null) {
+                stockLedger.register(item);
+            }
+            plan.counts.merge(itemId, line.getCount(), Integer::sum);
+        }
+        return plan;
+    }
+
+    /*
+    * 상품 id 순서대로 재고를 예약합니다. 모두 예약하면 true를, 재고가 부족하면 예약한 줄을 거꾸로 되돌린 뒤 false를 반환합니다.
+    * 그 밖의 예외(예: 잘못된 수량)도 예약한 줄을 되돌린 뒤 그대로 던집니다.
+    * */
+    private boolean reserve(TreeMap<Long, Integer> counts) {
+        List<Long> reservedIds = new ArrayList<>(counts.size());
+        try {
+            for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+                stockLedger.reserve(entry.getKey(), entry.getValue());
+                reservedIds.add(entry.getKey());
+            }
+            return true;
+        } catch (RuntimeException e) {
+            for (int i = reservedIds.size() - 1; i >= 0; i--) {
+                Long itemId = reservedIds.get(i);
+                stockLedger.release(itemId, counts.get(itemId));
+            }
+            if (e instanceof IllegalStateException) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    private void release(TreeMap<Long, Integer> counts) {
+        for (Map.Entry<Long, Integer> entry : counts.descendingMap().entrySet()) {
+            stockLedger.release(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /*
+    * 예약 작업이 끝날 때까지 기다려 예약에 성공했는지 반환합니다. 되돌리는 중에는 인터럽트로 멈추지 않고, 인터럽트 상태는 끝난 뒤 복원합니다.
+    * */
+    private static boolean awaitReserved(Future<Boolean> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    return false;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public long getPlacedCount() {
+        return placed.sum();
+    }
+
+    public long getAbortedCount() {
+        return aborted.sum();
+    }
+
+    /*
+    * 지금까지 place에 걸린 시간 기준으로 초당 처리한 장바구니 수(주문 생성 + 포기)를 반환합니다.
+    * */
+    public double getCartsPerSecond() {
+        long nanos = elapsedNanos.sum();
+        return nanos == 0 ? 0 : (placed.sum() + aborted.sum()) * 1_000_000_000.0 / nanos;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
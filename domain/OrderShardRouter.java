@@ -0,0 +1,104 @@
+package likelion.springbootsunny.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/*
+* OrderShardRouter는 회원 id를 기준으로 주문 데이터를 어느 샤드에 둘지 정하는 라우터입니다.
+* T는 샤드마다 하나씩 있는 저장소 자원(DataSource, EntityManagerFactory 등)이며, 샤드 번호 순서대로 넘겨받습니다.
+* 샤드로 나누는 것은 주문 데이터뿐이고, 회원과 상품은 ShardRoutingDataSource의 참조 DataSource에 하나씩만 둡니다.
+* 한 회원의 주문, 주문 상품, 배송은 모두 같은 샤드에 저장되므로 회원 단위 조회와 트랜잭션은 샤드 하나에서 끝나고,
+* 여러 회원에 걸친 보고서 조회만 scatterGather로 모든 샤드에 동시에 보내 결과를 합칩니다.
+* 주문, 주문 상품, 배송의 id는 ShardedIdentifierGenerator가 이 라우터의 id 생성기로 만들고,
+* 트랜잭션이 어느 샤드의 커넥션을 쓸지는 inShardOf가 ShardRoutingDataSource에 정해 줍니다.
+* workerId는 같은 샤드에 쓰는 애플리케이션 프로세스마다 달라야 합니다(배포 설정의 인스턴스 번호 등).
+* */
+public class OrderShardRouter<T> {
+
+    private final List<T> shards;
+    private final List<ShardedIdGenerator> idGenerators;
+    private final Executor executor;
+
+    public OrderShardRouter(List<T> shards, int workerId, Executor executor) {
+        if (shards.isEmpty() || shards.size() > ShardedIdGenerator.MAX_SHARDS) {
+            throw new IllegalArgumentException("shard count must be between 1 and " + ShardedIdGenerator.MAX_SHARDS);
+        }
+        this.shards = List.copyOf(shards);
+        this.idGenerators = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            idGenerators.add(new ShardedIdGenerator(i, workerId));
+        }
+        this.executor = executor;
+    }
+
+    /*
+    * 회원 id로 샤드 번호를 정합니다. 음수 id도 0 이상의 번호가 되도록 floorMod를 사용합니다.
+    * */
+    public int shardOf(Long memberId) {
+        return Math.floorMod(memberId, shards.size());
+    }
+
+    public T route(Member member) {
+        return shards.get(shardOf(member.getId()));
+    }
+
+    /*
+    * 이미 저장된 주문, 주문 상품, 배송의 id로 샤드를 찾습니다. id에 샤드 번호가 들어 있으므로 조회 없이 결정됩니다.
+    * */
+    public T routeById(long id) {
+        return shards.get(ShardedIdGenerator.shardOf(id));
+    }
+
+    /*
+    * 회원이 속한 샤드의 id 생성기로 새 id를 만듭니다.
+    * */
+    public long nextId(Member member) {
+        return nextId(shardOf(member.getId()));
+    }
+
+    public long nextId(int shard) {
+        return idGenerators.get(shard).nextId();
+    }
+
+    /*
+    * values를 memberOf로 얻은 회원의 샤드별로 나누어 샤드 번호 순서로 반환합니다. 샤드 안에서는 입력 순서를 유지합니다.
+    * 여러 회원의 주문을 한 번에 저장하는 일괄 작업은 이렇게 나눈 묶음마다 그 샤드에서 트랜잭션을 엽니다.
+    * */
+    public <E> Map<Integer, List<E>> groupByShard(List<E> values, Function<E, Member> memberOf) {
+        Map<Integer, List<E>> groups = new TreeMap<>();
+        for (E value : values) {
+            groups.computeIfAbsent(shardOf(memberOf.apply(value).getId()), shard -> new ArrayList<>()).add(value);
+        }
+        return groups;
+    }
+
+    /*
+    * 회원이 속한 샤드를 현재 스레드의 라우팅 키로 정하고 work를 실행합니다.
+    * 커넥션은 트랜잭션을 시작할 때 정해지므로 트랜잭션 경계(@Transactional 메서드 호출 등)를 work 안에 두어야 합니다.
+    * */
+    public <R> R inShardOf(Member member, Supplier<R> work) {
+        return ShardRoutingDataSource.callOnShard(shardOf(member.getId()), work);
+    }
+
+    /*
+    * 모든 샤드에 query를 동시에 실행하고 결과를 샤드 번호 순서대로 이어 붙여 반환합니다.
+    * 한 샤드라도 실패하면 예외가 그대로 전파됩니다.
+    * */
+    public <R> List<R> scatterGather(Function<T, List<R>> query) {
+        List<CompletableFuture<List<R>>> futures = new ArrayList<>(shards.size());
+        for (T shard : shards) {
+            futures.add(CompletableFuture.supplyAsync(() -> query.apply(shard), executor));
+        }
+        List<R> results = new ArrayList<>();
+        for (CompletableFuture<List<R>> future : futures) {
+            results.addAll(future.join());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,91 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+import static jakarta.persistence.EnumType.STRING;
+import static jakarta.persistence.FetchType.LAZY;
+import static lombok.AccessLevel.PROTECTED;
+
+/*
+* OrderSummary는 주문 내역 화면을 위한 읽기 전용 요약(프로젝션) 엔티티입니다.
+* Member -> Order -> OrderItem -> Item을 따라가며 생기는 N+1 조회 대신,
+* 주문 생성(Order.createOrder)과 취소(Order.cancel) 시점에 필요한 값을 한 행에 미리 복사해 둡니다.
+* (member_id, order_date) 인덱스와 키셋 페이지네이션으로 회원의 주문 내역을 하나의 인덱스 범위 스캔으로 조회합니다.
+* */
+@Entity
+@Table(name = "order_summary", indexes = {
+        @Index(name = "idx_order_summary_member_date", columnList = "member_id, order_date, order_id"),
+        @Index(name = "idx_order_summary_date", columnList = "order_date")
+})
+@NamedQuery(name = "OrderSummary.findFirstPageByMember",
+        query = "select s from OrderSummary s where s.memberId = :memberId"
+                + " order by s.orderDate desc, s.orderId desc")
+@NamedQuery(name = "OrderSummary.findNextPageByMember",
+        query = "select s from OrderSummary s where s.memberId = :memberId"
+                + " and (s.orderDate < :orderDate or (s.orderDate = :orderDate and s.orderId < :orderId))"
+                + " order by s.orderDate desc, s.orderId desc")
+@Getter
+@NoArgsConstructor(access = PROTECTED)
+public class OrderSummary {
+    /*
+    * @MapsId: 주문과 같은 id를 기본 키로 사용합니다. 별도의 시퀀스 없이 order_id가 곧 요약 행의 키가 됩니다.
+    * */
+    @Id
+    private Long orderId;
+
+    @MapsId
+    @OneToOne(fetch = LAZY)
+    @JoinColumn(name = "order_id")
+    private Order order;
+
+    /*
+    * 회원 정보는 조인 없이 보여줄 수 있도록 id와 이름을 복사해 둡니다.
+    * */
+    private Long memberId;
+    private String memberName;
+
+    @Enumerated(STRING)
+    private OrderStatus orderStatus;
+
+    @Enumerated(STRING)
+    private Delivery.DeliveryStatus deliveryStatus;
+
+    private int itemCount;
+    private long totalPrice;
+    private LocalDateTime orderDate;
+
+    /*
+    * 주문으로부터 요약 행을 생성합니다. Order.createOrder에서 주문 상품이 모두 추가된 뒤에 호출됩니다.
+    * */
+    static OrderSummary createOrderSummary(Order order) {
+        OrderSummary orderSummary = new OrderSummary();
+        orderSummary.order = order;
+        orderSummary.memberId = order.getMember().getId();
+        orderSummary.memberName = order.getMember().getName();
+        orderSummary.orderDate = order.getOrderDate();
+        orderSummary.refresh(order);
+        return orderSummary;
+    }
+
+    /*
+    * 주문의 상태가 바뀔 때 변경될 수 있는 값들만 다시 복사합니다.
+    * */
+    void refresh(Order order) {
+        this.orderStatus = order.getOrderStatus();
+        this.deliveryStatus = order.getDelivery().getDeliveryStatus();
+        this.itemCount = order.getOrderItemList().size();
+        this.totalPrice = order.getTotalPrice();
+    }
+
+    /*
+    * 상태만 다시 복사합니다. 배송 상태가 바뀔 때 사용하며, 주문 상품 목록을 로딩하지 않습니다.
+    * */
+    void refreshStatus(Order order) {
+        this.orderStatus = order.getOrderStatus();
+        this.deliveryStatus = order.getDelivery().getDeliveryStatus();
+    }
+}
@@ -0,0 +1,40 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.EntityManager;
+
+import java.util.List;
+
+/*
+* OrderSummaryQuery는 회원의 주문 요약을 키셋(orderDate, orderId) 방식으로 페이지 단위 조회합니다.
+* offset 방식과 달리 앞 페이지를 건너뛰는 비용이 없으므로 주문이 많은 회원도 페이지마다 같은 비용으로 조회됩니다.
+* */
+public class OrderSummaryQuery {
+
+    private final EntityManager em;
+
+    public OrderSummaryQuery(EntityManager em) {
+        this.em = em;
+    }
+
+    /*
+    * 첫 페이지를 조회합니다. 최신 주문부터 size개를 반환합니다.
+    * */
+    public List<OrderSummary> findFirstPage(Long memberId, int size) {
+        return em.createNamedQuery("OrderSummary.findFirstPageByMember", OrderSummary.class)
+                .setParameter("memberId", memberId)
+                .setMaxResults(size)
+                .getResultList();
+    }
+
+    /*
+    * 이전 페이지의 마지막 요약(last) 다음부터 size개를 조회합니다.
+    * */
+    public List<OrderSummary> findNextPage(Long memberId, OrderSummary last, int size) {
+        return em.createNamedQuery("OrderSummary.findNextPageByMember", OrderSummary.class)
+                .setParameter("memberId", memberId)
+                .setParameter("orderDate", last.getOrderDate())
+                .setParameter("orderId", last.getOrderId())
+                .setMaxResults(size)
+                .getResultList();
+    }
+}
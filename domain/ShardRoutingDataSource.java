@@ -0,0 +1,91 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreRemove;
+import jakarta.persistence.PreUpdate;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/*
+* ShardRoutingDataSource는 주문 데이터(orders, order_item, delivery, order_summary, order_event)만 샤드별 DataSource로 나누는 라우팅 DataSource입니다.
+* EntityManagerFactory는 이 DataSource 하나만 보므로 엔티티 매핑과 리포지토리는 샤드 수와 무관하게 그대로 사용합니다.
+* 현재 스레드에 샤드 번호가 정해져 있으면(OrderShardRouter.inShardOf, callOnShard) 그 샤드의 커넥션을,
+* 정해져 있지 않으면 샤딩하지 않는 참조 DataSource의 커넥션을 내어 줍니다.
+* 회원, 상품(member, item)은 참조 DataSource에만 두므로 회원 id가 샤드마다 겹치거나 상품 재고가 샤드 수만큼 따로 팔리지 않습니다.
+* 주소 사전(address_record)은 바뀌지 않고 내용으로 id가 정해지므로 참조 DataSource와 모든 샤드에 같은 행을 둡니다. (AddressBook.replicate)
+* 따라서 회원 가입, 재고 변경(Item.removeStock, StockLedger.flush)은 샤드 번호 없이 시작한 트랜잭션에서 하고,
+* 샤드 트랜잭션에서는 그 트랜잭션에서 읽은 회원과 상품을 주문이 id로만 참조하게 합니다. 샤드에는 회원, 상품 테이블이 없고 외래 키 컬럼만 있습니다.
+* 이를 어기고 샤드 트랜잭션에서 참조 엔티티를 쓰려고 하면 ReferenceWriteGuard가 flush 전에 실패시킵니다.
+* */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    /*
+    * 참조 DataSource의 조회 키입니다. 샤드 번호(Integer)와 겹치지 않도록 문자열을 사용합니다.
+    * */
+    private static final String REFERENCE = "reference";
+
+    private static final ThreadLocal<Integer> CURRENT_SHARD = new ThreadLocal<>();
+
+    /*
+    * 회원, 상품 같은 참조 엔티티를 샤드 트랜잭션에서 저장, 수정, 삭제하지 못하게 하는 엔티티 리스너입니다.
+    * 샤드에는 참조 테이블이 없으므로, 이 리스너가 없으면 샤드마다 다른 회원 행이나 재고 행이 생길 수 있습니다.
+    * */
+    public static class ReferenceWriteGuard {
+        @PrePersist
+        @PreUpdate
+        @PreRemove
+        public void checkNotOnShard(Object entity) {
+            Integer shard = CURRENT_SHARD.get();
+            if (shard != null) {
+                throw new IllegalStateException(entity.getClass().getSimpleName()
+                        + " is a reference entity and cannot be written on shard " + shard);
+            }
+        }
+    }
+
+    public ShardRoutingDataSource(DataSource reference, List<DataSource> shards) {
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        targets.put(REFERENCE, reference);
+        setTargetDataSources(targets);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Integer shard = CURRENT_SHARD.get();
+        return shard == null ? REFERENCE : shard;
+    }
+
+    /*
+    * 현재 스레드의 샤드 번호입니다. 정해지지 않았으면 null입니다.
+    * */
+    static Integer currentShard() {
+        return CURRENT_SHARD.get();
+    }
+
+    /*
+    * shard를 현재 스레드의 샤드 번호로 정하고 work를 실행한 뒤 이전 값으로 되돌립니다.
+    * */
+    public static <R> R callOnShard(int shard, Supplier<R> work) {
+        Integer previous = CURRENT_SHARD.get();
+        CURRENT_SHARD.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                CURRENT_SHARD.remove();
+            } else {
+                CURRENT_SHARD.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package likelion.springbootsunny.domain;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/*
+* @ShardedId: 주문, 주문 상품, 배송의 id를 시퀀스 대신 ShardedIdentifierGenerator로 만들도록 지정합니다.
+* 샤딩을 끈 경우(OrderShardRouter를 설치하지 않은 경우)에는 sequenceName의 pooled 시퀀스로 id를 만듭니다.
+* */
+@IdGeneratorType(ShardedIdentifierGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface ShardedId {
+
+    String sequenceName();
+
+    int allocationSize() default 100;
+}
@@ -0,0 +1,76 @@
+package likelion.springbootsunny.domain;
+
+/*
+* ShardedIdGenerator는 여러 DB 샤드에서 겹치지 않는 id를 만드는 snowflake 방식의 id 생성기입니다.
+* 64비트 id를 [부호 1비트 | 시각 41비트 | 샤드 8비트 | 워커 4비트 | 순번 10비트]로 나누어,
+* 같은 샤드의 같은 워커 안에서는 밀리초마다 1024개까지 증가하는 id를 만들고 id만 보고도 어느 샤드의 행인지 알 수 있게 합니다.
+* 같은 샤드에 쓰는 애플리케이션 프로세스가 여러 개이므로 프로세스마다 서로 다른 워커 번호를 주어야 id가 겹치지 않습니다.
+* 시각이 앞부분에 있으므로 id 순서가 대략 생성 순서와 같아 키셋 페이지네이션과도 잘 맞습니다.
+* */
+public class ShardedIdGenerator {
+
+    /*
+    * 2024-01-01T00:00:00Z 기준 밀리초입니다. 41비트로 약 69년을 표현할 수 있습니다.
+    * */
+    private static final long EPOCH_MILLIS = 1704067200000L;
+
+    private static final int SHARD_BITS = 8;
+    private static final int WORKER_BITS = 4;
+    private static final int SEQUENCE_BITS = 10;
+    public static final int MAX_SHARDS = 1 << SHARD_BITS;
+    public static final int MAX_WORKERS = 1 << WORKER_BITS;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long shard;
+    private final long worker;
+    private long lastMillis = -1;
+    private long sequence;
+
+    public ShardedIdGenerator(int shard, int worker) {
+        if (shard < 0 || shard >= MAX_SHARDS) {
+            throw new IllegalArgumentException("shard must be between 0 and " + (MAX_SHARDS - 1));
+        }
+        if (worker < 0 || worker >= MAX_WORKERS) {
+            throw new IllegalArgumentException("worker must be between 0 and " + (MAX_WORKERS - 1));
+        }
+        this.shard = shard;
+        this.worker = worker;
+    }
+
+    public synchronized long nextId() {
+        long now = System.currentTimeMillis();
+        if (now < lastMillis) {
+            // 시계가 뒤로 간 경우 마지막 시각을 계속 사용하여 id가 줄어들지 않게 합니다.
+            now = lastMillis;
+        }
+        if (now == lastMillis) {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                now = waitNextMillis(lastMillis);
+            }
+        } else {
+            sequence = 0;
+        }
+        lastMillis = now;
+        return ((now - EPOCH_MILLIS) << (SHARD_BITS + WORKER_BITS + SEQUENCE_BITS))
+                | (shard << (WORKER_BITS + SEQUENCE_BITS))
+                | (worker << SEQUENCE_BITS)
+                | sequence;
+    }
+
+    private long waitNextMillis(long lastMillis) {
+        long now = System.currentTimeMillis();
+        while (now <= lastMillis) {
+            Thread.onSpinWait();
+            now = System.currentTimeMillis();
+        }
+        return now;
+    }
+
+    /*
+    * id에 들어 있는 샤드 번호를 꺼냅니다.
+    * */
+    public static int shardOf(long id) {
+        return (int) ((id >>> (WORKER_BITS + SEQUENCE_BITS)) & (MAX_SHARDS - 1));
+    }
+}
@@ -0,0 +1,91 @@
+package likelion.springbootsunny.domain;
+
+import org.hibernate.boot.model.relational.Database;
+import org.hibernate.boot.model.relational.SqlStringGenerationContext;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Properties;
+
+/*
+* ShardedIdentifierGenerator는 @ShardedId가 붙은 엔티티의 id를 샤드 번호가 들어간 snowflake id로 만드는 Hibernate id 생성기입니다.
+* 시퀀스처럼 insert 전에 id를 정하므로 JDBC 배치 insert도 그대로 동작합니다.
+* Hibernate가 생성기를 직접 만들기 때문에 사용할 OrderShardRouter는 애플리케이션 시작 시 install로 등록합니다.
+* 라우터가 없으면(샤딩을 끈 경우) @ShardedId의 sequenceName으로 만든 pooled 시퀀스에 id 생성을 맡깁니다.
+* id의 샤드 번호는 행이 실제로 저장되는 샤드, 즉 현재 스레드에 정해진 샤드 번호를 따르므로 routeById가 항상 행을 찾습니다.
+* 샤드 번호가 정해지지 않은 스레드에서는 주문한 회원의 샤드 번호를 사용합니다.
+* */
+public class ShardedIdentifierGenerator implements IdentifierGenerator {
+
+    private static volatile OrderShardRouter<?> router;
+
+    private final ShardedId config;
+    private final SequenceStyleGenerator sequence = new SequenceStyleGenerator();
+
+    public ShardedIdentifierGenerator(ShardedId config) {
+        this.config = config;
+    }
+
+    public static void install(OrderShardRouter<?> orderShardRouter) {
+        router = orderShardRouter;
+    }
+
+    /*
+    * 대신 사용할 시퀀스를 설정합니다. 샤딩 여부는 실행 중에 install로 정해지므로 시퀀스는 항상 준비해 둡니다.
+    * */
+    @Override
+    public void configure(Type type, Properties parameters, ServiceRegistry serviceRegistry) {
+        Properties sequenceParameters = new Properties();
+        sequenceParameters.putAll(parameters);
+        sequenceParameters.setProperty(SequenceStyleGenerator.SEQUENCE_PARAM, config.sequenceName());
+        sequenceParameters.setProperty(SequenceStyleGenerator.INCREMENT_PARAM, String.valueOf(config.allocationSize()));
+        sequence.configure(type, sequenceParameters, serviceRegistry);
+    }
+
+    @Override
+    public void registerExportables(Database database) {
+        sequence.registerExportables(database);
+    }
+
+    @Override
+    public void initialize(SqlStringGenerationContext context) {
+        sequence.initialize(context);
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        OrderShardRouter<?> current = router;
+        if (current == null) {
+            return sequence.generate(session, object);
+        }
+        Integer routed = ShardRoutingDataSource.currentShard();
+        if (routed != null) {
+            return current.nextId(routed);
+        }
+        Member member = memberOf(object);
+        if (member == null || member.getId() == null) {
+            throw new IllegalStateException("sharded entity needs a persisted member: " + object.getClass().getSimpleName());
+        }
+        return current.nextId(member);
+    }
+
+    /*
+    * 주문은 회원을, 주문 상품과 배송은 자신이 속한 주문의 회원을 따릅니다.
+    * */
+    private static Member memberOf(Object object) {
+        Order order;
+        if (object instanceof Order) {
+            order = (Order) object;
+        } else if (object instanceof OrderItem) {
+            order = ((OrderItem) object).getOrder();
+        } else if (object instanceof Delivery) {
+            order = ((Delivery) object).getOrder();
+        } else {
+            throw new IllegalArgumentException("not a sharded entity: " + object.getClass().getName());
+        }
+        return order == null ? null : order.getMember();
+    }
+}
@@ -0,0 +1,515 @@
+package likelion.springbootsunny.domain;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/*
+* StatusJournal은 Delivery.deliveryStatus 변경을 모아서 나중에 반영하는(write-behind) 상태 저널입니다.
+* 상태 변경은 컬럼 하나짜리 update인데도 건마다 트랜잭션과 fsync를 치르므로, 여기서는 다음 순서로 묶어서 처리합니다.
+* 1. append: 상태 변경(Transition)을 메모리의 고정 크기 링 버퍼에 넣고 순번(seq)을 받습니다. 버퍼가 가득 차면 기다립니다.
+* 2. flusher 스레드가 버퍼에 쌓인 변경을 한꺼번에 꺼내 메모리 매핑된 로그 파일 끝에 쓰고 force 한 번으로 디스크에 기록합니다(group commit).
+*    awaitDurable(seq)은 해당 순번이 기록될 때까지 기다립니다.
+* 3. 기록된 변경은 (대상, id)마다 마지막 상태 하나로 합친 뒤(last-write-wins) Applier로 테이블에 반영합니다.
+*    반영에 실패하면 합친 변경을 들고 있다가 다음 차례에 다시 반영합니다.
+* 로그 형식: [반영 완료 순번 8바이트] 다음에 [순번 8바이트 | 대상 1바이트 | 상태 1바이트 | id 8바이트 | CRC32C 4바이트] 레코드가 이어집니다.
+* 레코드는 내용, 순번, CRC 순서로 쓰며, 다시 열 때 순번이 증가하고 CRC가 맞는 동안만 읽으므로 덜 쓰인 꼬리, 깨진 레코드, 이전 바퀴의 레코드는 무시됩니다.
+* 다시 열면 반영 완료 순번 이후의 레코드를 합쳐서 반영(replay)한 뒤 시작합니다. 상태를 덮어쓰는 반영이므로 두 번 반영되어도 결과가 같습니다.
+* 상태 전이 검증은 Order.cancel, Delivery.startProgress/complete가 먼저 하고, 저널은 그 결과만 기록합니다.
+* 저널로 반영하는 엔티티는 dirty checking으로 다시 flush 되지 않도록 준영속(detach) 상태로 다뤄야 합니다.
+* 주문 취소는 재고 복구가 함께 일어나므로 저널로 미루지 않고 Order.cancel이나 OrderBulkCancellation의 트랜잭션에서 바로 반영합니다.
+* 배송 상태는 반영되기 전까지 테이블에 이전 값으로 남으므로, 그 사이 일괄 취소가 배송이 끝난 주문을 취소하는 경합이 생길 수 있습니다.
+* 이를 막기 위해 OrderBulkCancellation은 isPending으로 반영 대기 중인 배송의 주문을 건너뛰고,
+* JpaApplier는 이미 취소된 주문의 배송 상태를 바꾸지 않습니다(건너뛴 수는 getSkippedCount).
+* */
+public class StatusJournal implements AutoCloseable {
+
+    private static final int HEADER_BYTES = Long.BYTES;
+    private static final int RECORD_BYTES = Long.BYTES + 1 + 1 + Long.BYTES + Integer.BYTES;
+    private static final int CRC_OFFSET = Long.BYTES + 1 + 1 + Long.BYTES;
+
+    /*
+    * 레코드의 대상 종류입니다. 로그에는 ordinal로 저장됩니다.
+    * */
+    public enum Target {
+        DELIVERY
+    }
+
+    /*
+    * 상태 변경 하나입니다.
+    * */
+    public static final class Transition {
+        private final long seq;
+        private final Target target;
+        private final long entityId;
+        private final int status;
+
+        private Transition(long seq, Target target, long entityId, int status) {
+            this.seq = seq;
+            this.target = target;
+            this.entityId = entityId;
+            this.status = status;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public Target getTarget() {
+            return target;
+        }
+
+        public long getEntityId() {
+            return entityId;
+        }
+
+        public Delivery.DeliveryStatus getDeliveryStatus() {
+            return Delivery.DeliveryStatus.values()[status];
+        }
+
+        private Key key() {
+            return new Key(target, entityId);
+        }
+    }
+
+    private static final class Key {
+        private final Target target;
+        private final long entityId;
+
+        private Key(Target target, long entityId) {
+            this.target = target;
+            this.entityId = entityId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return entityId == key.entityId && target == key.target;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(target, entityId);
+        }
+    }
+
+    /*
+    * 합쳐진 변경을 테이블에 반영합니다. 엔티티마다 변경이 하나씩만 들어옵니다. flusher 스레드에서 호출됩니다.
+    * */
+    public interface Applier {
+        void apply(List<Transition> transitions) throws Exception;
+    }
+
+    /*
+    * 전용 EntityManager와 리소스 로컬 트랜잭션으로 변경을 반영하는 Applier입니다.
+    * 같은 상태로 바뀌는 id를 모아 IN 절 update 한 번으로 처리하고, OrderSummary의 상태도 함께 고칩니다.
+    * OrderBulkCancellation과 같이 bulk update에서도 낙관적 락이 맞도록 version을 올립니다.
+    * 저널에 기록된 뒤 주문이 취소되었으면 그 배송은 바꾸지 않으며, 바꾸지 않은 수는 getSkippedCount로 확인합니다.
+    * */
+    public static class JpaApplier implements Applier, AutoCloseable {
+        private static final int IN_CLAUSE_SIZE = 500;
+
+        private final EntityManager em;
+        private final LongAdder skipped = new LongAdder();
+
+        public JpaApplier(EntityManagerFactory emf) {
+            this.em = emf.createEntityManager();
+        }
+
+        @Override
+        public void apply(List<Transition> transitions) {
+            Map<Delivery.DeliveryStatus, List<Long>> deliveries = new HashMap<>();
+            for (Transition transition : transitions) {
+                deliveries.computeIfAbsent(transition.getDeliveryStatus(), status -> new ArrayList<>())
+                        .add(transition.getEntityId());
+            }
+            EntityTransaction tx = em.getTransaction();
+            tx.begin();
+            try {
+                int changed = 0;
+                for (Map.Entry<Delivery.DeliveryStatus, List<Long>> entry : deliveries.entrySet()) {
+                    List<Long> ids = entry.getValue();
+                    for (int from = 0; from < ids.size(); from += IN_CLAUSE_SIZE) {
+                        List<Long> chunk = ids.subList(from, Math.min(from + IN_CLAUSE_SIZE, ids.size()));
+                        changed += em.createQuery("update Delivery d set d.deliveryStatus = :status, d.version = d.version + 1"
+                                        + " where d.id in :ids and not exists"
+                                        + " (select o.id from Order o where o.delivery = d and o.orderStatus = :canceled)")
+                                .setParameter("status", entry.getKey())
+                                .setParameter("ids", chunk)
+                                .setParameter("canceled", OrderStatus.CANCELED)
+                                .executeUpdate();
+                        em.createQuery("update OrderSummary s set s.deliveryStatus = :status"
+                                        + " where s.orderStatus <> :canceled"
+                                        + " and s.orderId in (select o.id from Order o where o.delivery.id in :ids)")
+                                .setParameter("status", entry.getKey())
+                                .setParameter("canceled", OrderStatus.CANCELED)
+                                .setParameter("ids", chunk)
+                                .executeUpdate();
+                    }
+                }
+                tx.commit();
+                skipped.add(transitions.size() - changed);
+            } catch (RuntimeException e) {
+                if (tx.isActive()) {
+                    tx.rollback();
+                }
+                throw e;
+            }
+        }
+
+        /*
+        * 주문이 이미 취소되어 반영하지 않은 배송 상태 변경 수입니다.
+        * */
+        public long getSkippedCount() {
+            return skipped.sum();
+        }
+
+        @Override
+        public void close() {
+            em.close();
+        }
+    }
+
+    private final Applier applier;
+    private final FileChannel channel;
+    private final MappedByteBuffer log;
+    private final ExecutorService flusher = Executors.newSingleThreadExecutor();
+    private final long maxDelayNanos;
+
+    /*
+    * 링 버퍼입니다. head는 다음에 꺼낼 위치, tail은 다음에 넣을 위치이며 둘 다 계속 증가하고 배열 크기로 나눈 나머지를 씁니다.
+    * */
+    private final Transition[] ring;
+    private long head;
+    private long tail;
+    private long nextSeq;
+    private long durableSeq;
+    private volatile boolean running = true;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+
+    /*
+    * flusher 스레드만 사용하는 상태입니다.
+    * */
+    private final Map<Key, Transition> pending = new LinkedHashMap<>();
+    private int position = HEADER_BYTES;
+
+    /*
+    * append 뒤 아직 테이블에 반영되지 않은 엔티티 -> 그 엔티티의 마지막 순번입니다. 다른 스레드가 isPending으로 읽습니다.
+    * */
+    private final Map<Key, Long> unapplied = new ConcurrentHashMap<>();
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder applyFailures = new LongAdder();
+    private long replayed;
+
+    /*
+    * 로그 파일을 logBytes 크기로 매핑하여 열고, 반영되지 않은 변경을 replay한 뒤 flusher를 시작합니다.
+    * 로그에는 최소한 링 버퍼 한 번 분량이 들어가야 합니다.
+    * maxDelayMillis는 버퍼에 변경이 적을 때 group commit을 기다리는 최대 시간입니다.
+    * */
+    public StatusJournal(Path path, int logBytes, int ringCapacity, long maxDelayMillis, Applier applier)
+            throws IOException {
+        if (maxDelayMillis <= 0) {
+            throw new IllegalArgumentException("maxDelayMillis must be positive");
+        }
+        if (logBytes < HEADER_BYTES + (long) ringCapacity * RECORD_BYTES) {
+            throw new IllegalArgumentException("log must hold at least one ring of records");
+        }
+        this.applier = applier;
+        this.ring = new Transition[ringCapacity];
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            this.log = channel.map(FileChannel.MapMode.READ_WRITE, 0, logBytes);
+            replay();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        flusher.execute(this::flushLoop);
+    }
+
+    /*
+    * 반영 완료 순번 이후의 레코드를 읽어 합친 뒤 반영하고, 로그를 처음부터 다시 쓰도록 비웁니다.
+    * 반영에 실패하면 예외가 발생하며 저널은 열리지 않습니다.
+    * */
+    private void replay() throws IOException {
+        long appliedSeq = log.getLong(0);
+        long lastSeq = appliedSeq;
+        long previous = 0;
+        for (int at = HEADER_BYTES; at + RECORD_BYTES <= log.capacity(); at += RECORD_BYTES) {
+            long seq = log.getLong(at);
+            int target = log.get(at + Long.BYTES);
+            int status = log.get(at + Long.BYTES + 1);
+            if (seq <= previous || target < 0 || target >= Target.values().length
+                    || status < 0 || status >= Delivery.DeliveryStatus.values().length
+                    || log.getInt(at + CRC_OFFSET) != checksum(at)) {
+                break;
+            }
+            previous = seq;
+            if (seq > appliedSeq) {
+                Transition transition = new Transition(seq, Target.values()[target],
+                        log.getLong(at + Long.BYTES + 2), status);
+                pending.put(transition.key(), transition);
+                lastSeq = seq;
+            }
+        }
+        this.nextSeq = Math.max(lastSeq, previous) + 1;
+        this.durableSeq = nextSeq - 1;
+        if (!pending.isEmpty()) {
+            replayed = pending.size();
+            try {
+                applier.apply(new ArrayList<>(pending.values()));
+            } catch (Exception e) {
+                throw new IllegalStateException("status journal replay failed", e);
+            }
+            applied.add(pending.size());
+            pending.clear();
+        }
+        log.putLong(0, durableSeq);
+        log.force();
+    }
+
+    /*
+    * 레코드 at의 순번, 대상, 상태, id에 대한 CRC32C입니다.
+    * */
+    private int checksum(int at) {
+        CRC32C crc = new CRC32C();
+        for (int i = 0; i < CRC_OFFSET; i++) {
+            crc.update(log.get(at + i));
+        }
+        return (int) crc.getValue();
+    }
+
+    /*
+    * 배송의 현재 상태를 기록하고 순번을 반환합니다.
+    * */
+    public long append(Delivery delivery) throws InterruptedException {
+        return append(Target.DELIVERY, delivery.getId(), delivery.getDeliveryStatus().ordinal());
+    }
+
+    private long append(Target target, long entityId, int status) throws InterruptedException {
+        lock.lock();
+        try {
+            while (tail - head == ring.length) {
+                notFull.await();
+            }
+            if (!running) {
+                throw new IllegalStateException("status journal is closed");
+            }
+            long seq = nextSeq++;
+            Transition transition = new Transition(seq, target, entityId, status);
+            ring[(int) (tail++ % ring.length)] = transition;
+            unapplied.put(transition.key(), seq);
+            appended.increment();
+            notEmpty.signal();
+            return seq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+    * 대상 엔티티에 기록되었지만 아직 테이블에 반영되지 않은 변경이 있는지 확인합니다.
+    * 테이블의 상태를 보고 판단하는 다른 작업(OrderBulkCancellation)이 반영 전의 이전 상태를 믿지 않도록 할 때 사용합니다.
+    * */
+    public boolean isPending(Target target, long entityId) {
+        return unapplied.containsKey(new Key(target, entityId));
+    }
+
+    /*
+    * seq까지의 변경이 로그에 force 될 때까지 기다립니다.
+    * */
+    public void awaitDurable(long seq) throws InterruptedException {
+        lock.lock();
+        try {
+            while (durableSeq < seq) {
+                durable.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        List<Transition> batch = new ArrayList<>(ring.length);
+        while (true) {
+            batch.clear();
+            boolean stopping;
+            lock.lock();
+            try {
+                while (running && head == tail && pending.isEmpty()) {
+                    notEmpty.await();
+                }
+                long deadline = System.nanoTime() + maxDelayNanos;
+                long wait;
+                while (running && tail - head < ring.length / 2 && (wait = deadline - System.nanoTime()) > 0) {
+                    notEmpty.awaitNanos(wait);
+                }
+                while (head < tail) {
+                    int slot = (int) (head++ % ring.length);
+                    batch.add(ring[slot]);
+                    ring[slot] = null;
+                }
+                notFull.signalAll();
+                stopping = !running;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            if (!batch.isEmpty()) {
+                commit(batch);
+            }
+            if (!pending.isEmpty()) {
+                applyPending();
+            }
+            if (stopping) {
+                return;
+            }
+        }
+    }
+
+    /*
+    * 꺼낸 변경을 로그에 쓰고 force 한 번으로 기록합니다.
+    * 로그 끝에 자리가 없으면 반영을 마칠 때까지(실패하면 maxDelay마다 다시 시도) 기다린 뒤 처음부터 다시 씁니다.
+    * */
+    private void commit(List<Transition> batch) {
+        if (position + batch.size() * RECORD_BYTES > log.capacity()) {
+            while (!pending.isEmpty()) {
+                if (!applyPending()) {
+                    LockSupport.parkNanos(maxDelayNanos);
+                }
+            }
+            position = HEADER_BYTES;
+        }
+        for (Transition transition : batch) {
+            log.put(position + Long.BYTES, (byte) transition.target.ordinal());
+            log.put(position + Long.BYTES + 1, (byte) transition.status);
+            log.putLong(position + Long.BYTES + 2, transition.entityId);
+            log.putLong(position, transition.seq);
+            log.putInt(position + CRC_OFFSET, checksum(position));
+            position += RECORD_BYTES;
+            pending.put(transition.key(), transition);
+        }
+        log.force();
+        commits.increment();
+
+        lock.lock();
+        try {
+            durableSeq = batch.get(batch.size() - 1).seq;
+            durable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+    * 합쳐진 변경을 반영하고 반영 완료 순번을 로그 머리에 씁니다.
+    * 머리는 다음 group commit 때 함께 force 되며, 그 전에 멈추면 replay에서 한 번 더 반영될 뿐입니다.
+    * */
+    private boolean applyPending() {
+        long lastSeq = 0;
+        for (Transition transition : pending.values()) {
+            lastSeq = Math.max(lastSeq, transition.seq);
+        }
+        try {
+            applier.apply(new ArrayList<>(pending.values()));
+        } catch (Exception e) {
+            applyFailures.increment();
+            return false;
+        }
+        applied.add(pending.size());
+        for (Transition transition : pending.values()) {
+            unapplied.remove(transition.key(), transition.seq);
+        }
+        pending.clear();
+        log.putLong(0, lastSeq);
+        return true;
+    }
+
+    public long getAppendedCount() {
+        return appended.sum();
+    }
+
+    public long getCommitCount() {
+        return commits.sum();
+    }
+
+    /*
+    * 실제로 테이블에 반영한 변경 수입니다. 같은 엔티티의 변경이 합쳐지므로 getAppendedCount보다 작거나 같습니다.
+    * */
+    public long getAppliedCount() {
+        return applied.sum();
+    }
+
+    public long getApplyFailureCount() {
+        return applyFailures.sum();
+    }
+
+    /*
+    * 열 때 replay로 다시 반영한 변경 수입니다.
+    * */
+    public long getReplayedCount() {
+        return replayed;
+    }
+
+    /*
+    * 버퍼에 남은 변경을 기록, 반영한 뒤 flusher를 멈추고 로그를 닫습니다.
+    * */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.force();
+        channel.close();
+    }
+}
@@ -0,0 +1,176 @@
+package likelion.springbootsunny.domain;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+* StockHoldManager는 장바구니 결제 동안 재고를 일정 시간만 잡아 두는(hold) 예약 관리자입니다.
+* 예약은 StockLedger.reserve로 재고를 차감해 두고, 시간 안에 확정(confirm)되면 주문 상품(OrderItem)으로 바뀌며,
+* 만료되거나 취소(release)되면 StockLedger.release로 재고를 돌려놓습니다.
+* 만료 시각은 해시 타이밍 휠(hashed timing wheel)로 관리합니다. 휠은 tickMillis 간격의 칸(bucket) 배열이고,
+* 예약은 만료 시각에 해당하는 칸에 들어가며 휠 한 바퀴보다 먼 예약은 남은 바퀴 수(rounds)를 함께 저장합니다.
+* 따라서 예약 추가, 확정, 취소는 O(1)이고, advance는 지나간 칸에 든 예약만 확인합니다.
+* 시각은 호출하는 쪽이 넘겨주므로(now) 스케줄러나 테스트에서 결정적으로 구동할 수 있습니다.
+* */
+public class StockHoldManager {
+
+    /*
+    * 예약 하나입니다. 같은 칸의 예약끼리 양방향 연결 리스트로 이어져 있어 중간에서도 O(1)로 뺄 수 있습니다.
+    * */
+    private static final class Hold {
+        private final long id;
+        private final Long itemId;
+        private final int quantity;
+        private long rounds;
+        private int bucket;
+        private Hold prev;
+        private Hold next;
+
+        private Hold(long id, Long itemId, int quantity) {
+            this.id = id;
+            this.itemId = itemId;
+            this.quantity = quantity;
+        }
+    }
+
+    private final StockLedger stockLedger;
+    private final long tickMillis;
+    private final Hold[] buckets;
+    private final int mask;
+    private final Map<Long, Hold> holds = new HashMap<>();
+    private final Map<Long, Integer> heldByItem = new HashMap<>();
+
+    private long currentTick;
+    private long nextHoldId = 1;
+
+    /*
+    * wheelSize는 2의 거듭제곱으로 올려 사용합니다. tickMillis * wheelSize가 흔한 예약 시간보다 길면 rounds 확인이 거의 없습니다.
+    * */
+    public StockHoldManager(StockLedger stockLedger, long tickMillis, int wheelSize, long nowMillis) {
+        int size = Integer.highestOneBit(Math.max(wheelSize - 1, 1)) << 1;
+        this.stockLedger = stockLedger;
+        this.tickMillis = tickMillis;
+        this.buckets = new Hold[size];
+        this.mask = size - 1;
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /*
+    * itemId 상품을 quantity만큼 ttlMillis 동안 예약하고 예약 id를 반환합니다. 재고가 부족하면 "need more stock" 예외가 발생합니다.
+    * */
+    public synchronized long hold(Long itemId, int quantity, long ttlMillis) {
+        stockLedger.reserve(itemId, quantity);
+        Hold hold = new Hold(nextHoldId++, itemId, quantity);
+        long ticks = Math.max(1, (ttlMillis + tickMillis - 1) / tickMillis);
+        hold.rounds = (ticks - 1) / buckets.length;
+        hold.bucket = (int) ((currentTick + ticks) & mask);
+        link(hold);
+        holds.put(hold.id, hold);
+        heldByItem.merge(itemId, quantity, Integer::sum);
+        return hold.id;
+    }
+
+    /*
+    * 예약을 확정하여 주문 상품을 생성합니다. 재고는 예약할 때 이미 차감되었으므로 다시 차감하지 않습니다.
+    * 이미 만료되었거나 취소된 예약이면 IllegalStateException이 발생합니다.
+    * */
+    public OrderItem confirm(long holdId, Item item, Money orderPrice) {
+        Hold hold;
+        synchronized (this) {
+            Hold found = holds.get(holdId);
+            if (found != null && !found.itemId.equals(item.getId())) {
+                throw new IllegalArgumentException("hold " + holdId + " is not for item " + item.getId());
+            }
+            hold = remove(holdId);
+        }
+        return OrderItem.createReservedOrderItem(item, orderPrice, hold.quantity);
+    }
+
+    /*
+    * 예약을 취소하고 재고를 돌려놓습니다.
+    * */
+    public synchronized void release(long holdId) {
+        Hold hold = remove(holdId);
+        stockLedger.release(hold.itemId, hold.quantity);
+    }
+
+    /*
+    * 현재 시각까지 지나간 칸을 차례로 확인하여 만료된 예약의 재고를 돌려놓고, 만료된 예약 수를 반환합니다.
+    * */
+    public synchronized int advance(long nowMillis) {
+        long targetTick = nowMillis / tickMillis;
+        int expired = 0;
+        while (currentTick < targetTick) {
+            currentTick++;
+            Hold hold = buckets[(int) (currentTick & mask)];
+            while (hold != null) {
+                Hold next = hold.next;
+                if (hold.rounds > 0) {
+                    hold.rounds--;
+                } else {
+                    unlink(hold);
+                    holds.remove(hold.id);
+                    unhold(hold);
+                    stockLedger.release(hold.itemId, hold.quantity);
+                    expired++;
+                }
+                hold = next;
+            }
+        }
+        return expired;
+    }
+
+    /*
+    * 예약으로 잡혀 있는 수량입니다. 예약 가능한 수량은 StockLedger.available로 확인합니다.
+    * */
+    public synchronized int reserved(Long itemId) {
+        return heldByItem.getOrDefault(itemId, 0);
+    }
+
+    public int available(Long itemId) {
+        return stockLedger.available(itemId);
+    }
+
+    public synchronized int size() {
+        return holds.size();
+    }
+
+    private Hold remove(long holdId) {
+        Hold hold = holds.remove(holdId);
+        if (hold == null) {
+            throw new IllegalStateException("hold " + holdId + " is expired or released");
+        }
+        unlink(hold);
+        unhold(hold);
+        return hold;
+    }
+
+    /*
+    * 상품별 예약 수량에서 hold의 수량을 뺍니다. 0이 되면 항목을 지워 끝난 상품이 맵에 쌓이지 않게 합니다.
+    * */
+    private void unhold(Hold hold) {
+        heldByItem.merge(hold.itemId, -hold.quantity, (held, delta) -> held + delta == 0 ? null : held + delta);
+    }
+
+    private void link(Hold hold) {
+        Hold head = buckets[hold.bucket];
+        hold.next = head;
+        if (head != null) {
+            head.prev = hold;
+        }
+        buckets[hold.bucket] = hold;
+    }
+
+    private void unlink(Hold hold) {
+        if (hold.prev != null) {
+            hold.prev.next = hold.next;
+        } else {
+            buckets[hold.bucket] = hold.next;
+        }
+        if (hold.next != null) {
+            hold.next.prev = hold.prev;
+        }
+        hold.prev = null;
+        hold.next = null;
+    }
+}
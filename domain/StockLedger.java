@@ -0,0 +1,144 @@
+package likelion.springbootsunny.domain;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+* StockLedger는 상품별 재고를 메모리 상의 슬롯에서 관리하는 재고 예약 엔진입니다.
+* Item.removeStock/addStock은 엔티티 필드를 그대로 읽고 쓰기 때문에 동시에 주문이 몰리면 초과 판매가 발생하거나 한 행의 락에 줄을 서게 됩니다.
+* 이 클래스는 상품마다 CAS 기반 카운터(AtomicInteger)를 두고 예약/해제를 원자적으로 처리한 뒤,
+* 누적된 순변화량(delta)만 flush 시점에 Item 엔티티에 한 번에 반영합니다.
+* Item.removeStock/addStock이나 bulk update처럼 원장을 거치지 않고 바뀐 재고는 flush가 엔티티의 재고와 원장이 마지막으로 본 재고를 비교하여 슬롯에 반영하므로,
+* 예약 가능한 수량이 DB의 재고와 계속 어긋나지 않습니다. DB에서 바로 바꾼 경우에는 recordExternalChange로 즉시 알릴 수 있습니다.
+* */
+public class StockLedger {
+
+    /*
+    * 상품 id -> 슬롯. 슬롯은 한 번 등록되면 교체되지 않으므로 조회 이후에는 락 없이 CAS만으로 동작합니다.
+    * */
+    private final ConcurrentHashMap<Long, Slot> slots = new ConcurrentHashMap<>();
+
+    /*
+    * available: 지금 예약 가능한 재고 수량입니다.
+    * delta: 마지막 flush 이후 Item 엔티티에 아직 반영되지 않은 순변화량입니다. (예약은 음수, 해제는 양수)
+    * base: 원장이 마지막으로 확인한 엔티티의 재고입니다. flush와 recordExternalChange만 슬롯을 잠그고 고칩니다.
+    * */
+    private static final class Slot {
+        private final AtomicInteger available;
+        private final AtomicInteger delta = new AtomicInteger();
+        private int base;
+
+        private Slot(int stock) {
+            this.available = new AtomicInteger(stock);
+            this.base = stock;
+        }
+    }
+
+    /*
+    * 상품의 현재 재고로 슬롯을 초기화합니다. 이미 등록된 상품이면 기존 슬롯을 그대로 사용하며, 그 사이 바뀐 재고는 다음 flush에서 맞춥니다.
+    * */
+    public void register(Item item) {
+        slots.computeIfAbsent(item.getId(), id -> new Slot(item.getStock()));
+    }
+
+    /*
+    * 재고를 quantity만큼 예약합니다.
+    * compareAndSet 루프로 남은 재고가 음수가 되지 않는 경우에만 차감하며, 부족하면 Item.removeStock과 같은 예외를 발생시킵니다.
+    * */
+    public void reserve(Long itemId, int quantity) {
+        checkQuantity(quantity);
+        Slot slot = slot(itemId);
+        while (true) {
+            int current = slot.available.get();
+            int rest = current - quantity;
+            if (rest < 0) {
+                throw new IllegalStateException("need more stock");
+            }
+            if (slot.available.compareAndSet(current, rest)) {
+                slot.delta.addAndGet(-quantity);
+                return;
+            }
+        }
+    }
+
+    /*
+    * 예약했던 재고를 quantity만큼 되돌립니다. 주문 취소나 예약 만료 시 사용합니다.
+    * */
+    public void release(Long itemId, int quantity) {
+        checkQuantity(quantity);
+        Slot slot = slot(itemId);
+        slot.available.addAndGet(quantity);
+        slot.delta.addAndGet(quantity);
+    }
+
+    /*
+    * 현재 예약 가능한 재고 수량을 반환합니다.
+    * */
+    public int available(Long itemId) {
+        return slot(itemId).available.get();
+    }
+
+    /*
+    * 상품 재고를 원장을 거치지 않고 DB에서 quantity만큼 바꾼 경우(예: OrderBulkCancellation의 bulk update) 슬롯에 바로 반영합니다.
+    * 등록되지 않은 상품이면 아무것도 하지 않습니다.
+    * */
+    public void recordExternalChange(Long itemId, int quantity) {
+        Slot slot = slots.get(itemId);
+        if (slot == null) {
+            return;
+        }
+        synchronized (slot) {
+            slot.available.addAndGet(quantity);
+            slot.base += quantity;
+        }
+    }
+
+    /*
+    * 누적된 순변화량을 Item 엔티티에 반영하고 반영한 값을 반환합니다.
+    * item은 호출하는 트랜잭션에서 잠그거나 버전 검사를 받는 최신 엔티티여야 합니다.
+    * 먼저 엔티티의 재고가 원장이 마지막으로 본 재고(base)와 다르면 그 차이(원장을 거치지 않은 변경)를 예약 가능 수량에 더해 슬롯을 다시 맞춥니다.
+    * getAndSet(0)으로 delta를 가져오므로 flush 도중에 들어온 예약은 다음 flush에 반영됩니다.
+    * Item에 반영하다 예외가 발생하면(다른 경로로 팔린 재고를 원장이 이미 예약해 준 경우) 가져온 delta를 슬롯에 되돌려 놓고 예외를 다시 던집니다.
+    * 이때도 예약 가능 수량은 이미 실제 재고에 맞춰졌으므로 그 뒤의 예약은 거절되고, 해제나 입고로 재고가 채워지면 다음 flush가 성공합니다.
+    * */
+    public int flush(Item item) {
+        Slot slot = slots.get(item.getId());
+        if (slot == null) {
+            return 0;
+        }
+        synchronized (slot) {
+            int drift = item.getStock() - slot.base;
+            if (drift != 0) {
+                slot.available.addAndGet(drift);
+                slot.base = item.getStock();
+            }
+            int delta = slot.delta.getAndSet(0);
+            try {
+                if (delta > 0) {
+                    item.addStock(delta);
+                } else if (delta < 0) {
+                    item.removeStock(-delta);
+                }
+            } catch (RuntimeException e) {
+                slot.delta.addAndGet(delta);
+                throw e;
+            }
+            slot.base = item.getStock();
+            return delta;
+        }
+    }
+
+    private void checkQuantity(int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("quantity must be positive: " + quantity);
+        }
+    }
+
+    private Slot slot(Long itemId) {
+        Slot slot = slots.get(itemId);
+        if (slot == null) {
+            throw new IllegalArgumentException("not registered item: " + itemId);
+        }
+        return slot;
+    }
+}